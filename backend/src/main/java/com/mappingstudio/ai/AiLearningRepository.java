@@ -1,9 +1,11 @@
 package com.mappingstudio.ai;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.transaction.annotation.Transactional;
 import java.util.List;
 import java.util.Optional;
 
+@Transactional(readOnly = true)
 public interface AiLearningRepository extends JpaRepository<AiLearningEntity, Long> {
 
     Optional<AiLearningEntity> findBySourceFieldAndTargetFieldAndLogic(
@@ -1,42 +1,53 @@
 package com.mappingstudio.ai;
 
+import com.mappingstudio.storage.SqliteWriter;
 import org.springframework.stereotype.Service;
 
 /**
  * Records accepted/rejected/edited mappings for AI suggestions.
  * Does not handle file uploads or Excel; bulk import is isolated in
  * com.mappingstudio.ai.training (TrainingImportService + scanner + parser).
+ * Each update reads and writes its record in one transaction through SqliteWriter, so concurrent feedback
+ * on the same mapping is counted once per call and bursts of feedback share commits.
  */
 @Service
 public class AiTrainerService {
 
     private final AiLearningRepository repo;
+    private final SqliteWriter writer;
 
-    public AiTrainerService(AiLearningRepository repo) {
+    public AiTrainerService(AiLearningRepository repo, SqliteWriter writer) {
         this.repo = repo;
+        this.writer = writer;
     }
 
     public void learnAccepted(String source, String target, String logic) {
-        var record = repo.findBySourceFieldAndTargetFieldAndLogic(source, target, logic)
-                .orElse(new AiLearningEntity(source, target, logic));
+        writer.run(() -> {
+            var record = repo.findBySourceFieldAndTargetFieldAndLogic(source, target, logic)
+                    .orElse(new AiLearningEntity(source, target, logic));
 
-        record.recordAccepted();
-        repo.save(record);
+            record.recordAccepted();
+            repo.save(record);
+        });
     }
 
     public void learnRejected(String source, String target, String logic) {
-        var record = repo.findBySourceFieldAndTargetFieldAndLogic(source, target, logic)
-                .orElse(new AiLearningEntity(source, target, logic));
+        writer.run(() -> {
+            var record = repo.findBySourceFieldAndTargetFieldAndLogic(source, target, logic)
+                    .orElse(new AiLearningEntity(source, target, logic));
 
-        record.recordRejected();
-        repo.save(record);
+            record.recordRejected();
+            repo.save(record);
+        });
     }
 
     public void learnEdited(String source, String target, String logic) {
-        var record = repo.findBySourceFieldAndTargetFieldAndLogic(source, target, logic)
-                .orElse(new AiLearningEntity(source, target, logic));
+        writer.run(() -> {
+            var record = repo.findBySourceFieldAndTargetFieldAndLogic(source, target, logic)
+                    .orElse(new AiLearningEntity(source, target, logic));
 
-        record.recordEdited();
-        repo.save(record);
+            record.recordEdited();
+            repo.save(record);
+        });
     }
 }
@@ -1,6 +1,7 @@
 package com.mappingstudio.ai.training;
 
 import com.mappingstudio.ai.AiTrainerService;
+import com.mappingstudio.storage.SqliteWriter;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
@@ -13,22 +14,29 @@ import org.springframework.web.multipart.MultipartFile;
 @Service
 public class TrainingImportService {
 
+    /** Rows per write transaction: large sheets commit in chunks so interactive writes are not held up behind them. */
+    private static final int ROWS_PER_TRANSACTION = 250;
+
     private final ExcelSpecScanner scanner;
     private final SafeExcelSpecParser parser;
     private final AiTrainerService trainer;
+    private final SqliteWriter writer;
 
     public TrainingImportService(ExcelSpecScanner scanner,
                                  SafeExcelSpecParser parser,
-                                 AiTrainerService trainer) {
+                                 AiTrainerService trainer,
+                                 SqliteWriter writer) {
         this.scanner = scanner;
         this.parser = parser;
         this.trainer = trainer;
+        this.writer = writer;
     }
 
     /**
      * Import mapping spec from Excel after scanning for vulnerabilities.
      * File is validated (size, magic bytes) and parsed with strict limits;
      * only sanitized (source, target, logic) strings are passed to the trainer.
+     * Rows are committed in chunks of ROWS_PER_TRANSACTION, so a failure part-way keeps the chunks before it.
      *
      * @param file uploaded .xlsx (must pass ExcelSpecScanner first)
      * @return number of rows learned
@@ -38,8 +46,14 @@ public class TrainingImportService {
 
         try (var bounded = scanner.boundedStream(file)) {
             var rows = parser.parse(bounded);
-            for (SanitizedRow row : rows) {
-                trainer.learnAccepted(row.source(), row.target(), row.logic());
+            // One write transaction per chunk rather than one commit per row or one for the whole sheet
+            for (int i = 0; i < rows.size(); i += ROWS_PER_TRANSACTION) {
+                var chunk = rows.subList(i, Math.min(rows.size(), i + ROWS_PER_TRANSACTION));
+                writer.run(() -> {
+                    for (SanitizedRow row : chunk) {
+                        trainer.learnAccepted(row.source(), row.target(), row.logic());
+                    }
+                });
             }
             return rows.size();
         }
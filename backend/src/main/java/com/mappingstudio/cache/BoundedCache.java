@@ -0,0 +1,139 @@
+package com.mappingstudio.cache;
+
+import java.util.*;
+import java.util.function.BiPredicate;
+import java.util.function.BinaryOperator;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+
+/**
+ * Small in-process LRU cache bounded by total weight (entry count when every entry weighs 1), with hit, miss
+ * and eviction counts. Loads on a miss run outside the lock; a loaded value is only stored when no write or
+ * invalidation happened meanwhile, so a slow read cannot put back a row that was just changed or deleted.
+ * Null values are never cached.
+ */
+public final class BoundedCache<K, V> {
+
+    private final String name;
+    private final long maxWeight;
+    private final ToIntFunction<V> weigher;
+    private final LinkedHashMap<K, V> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long weight;
+    /** Bumped by every put and invalidation; loads started before a bump are not stored. */
+    private long epoch;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    public BoundedCache(String name, long maxWeight, ToIntFunction<V> weigher) {
+        this.name = name;
+        this.maxWeight = Math.max(1, maxWeight);
+        this.weigher = weigher;
+    }
+
+    /** Cache of at most maxEntries entries. */
+    public static <K, V> BoundedCache<K, V> ofSize(String name, int maxEntries) {
+        return new BoundedCache<>(name, maxEntries, v -> 1);
+    }
+
+    public synchronized V getIfPresent(K key) {
+        V v = entries.get(key);
+        if (v != null) hits++;
+        else misses++;
+        return v;
+    }
+
+    /** Cached value, or loader's value (cached unless null or invalidated while loading). */
+    public V get(K key, Function<? super K, ? extends V> loader) {
+        long started;
+        synchronized (this) {
+            V v = entries.get(key);
+            if (v != null) {
+                hits++;
+                return v;
+            }
+            misses++;
+            started = epoch;
+        }
+        V loaded = loader.apply(key);
+        if (loaded == null) return null;
+        synchronized (this) {
+            if (epoch == started) store(key, loaded);
+        }
+        return loaded;
+    }
+
+    public synchronized void put(K key, V value) {
+        epoch++;
+        if (value == null) remove(key);
+        else store(key, value);
+    }
+
+    /** Like {@link Map#merge}; returns the value now cached for key. */
+    public synchronized V merge(K key, V value, BinaryOperator<V> fn) {
+        epoch++;
+        V old = entries.get(key);
+        V merged = old == null ? value : fn.apply(old, value);
+        if (merged != old) store(key, merged);
+        return merged;
+    }
+
+    /** Removes the entry; returns the value that was cached, if any. */
+    public synchronized V invalidate(K key) {
+        epoch++;
+        return remove(key);
+    }
+
+    public synchronized void removeIf(BiPredicate<? super K, ? super V> filter) {
+        epoch++;
+        for (Iterator<Map.Entry<K, V>> it = entries.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<K, V> e = it.next();
+            if (filter.test(e.getKey(), e.getValue())) {
+                weight -= weigher.applyAsInt(e.getValue());
+                it.remove();
+            }
+        }
+    }
+
+    public synchronized void invalidateAll() {
+        epoch++;
+        entries.clear();
+        weight = 0;
+    }
+
+    /** { name, size, weight, maxWeight, hits, misses, hitRate, evictions } */
+    public synchronized Map<String, Object> stats() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("name", name);
+        m.put("size", entries.size());
+        m.put("weight", weight);
+        m.put("maxWeight", maxWeight);
+        m.put("hits", hits);
+        m.put("misses", misses);
+        long lookups = hits + misses;
+        m.put("hitRate", lookups == 0 ? 0.0 : Math.round(1000.0 * hits / lookups) / 1000.0);
+        m.put("evictions", evictions);
+        return m;
+    }
+
+    private void store(K key, V value) {
+        int w = weigher.applyAsInt(value);
+        remove(key);
+        // An entry heavier than the whole cache would only evict everything else
+        if (w > maxWeight) return;
+        entries.put(key, value);
+        weight += w;
+        for (Iterator<Map.Entry<K, V>> it = entries.entrySet().iterator(); weight > maxWeight && it.hasNext(); ) {
+            Map.Entry<K, V> eldest = it.next();
+            weight -= weigher.applyAsInt(eldest.getValue());
+            it.remove();
+            evictions++;
+        }
+    }
+
+    private V remove(K key) {
+        V old = entries.remove(key);
+        if (old != null) weight -= weigher.applyAsInt(old);
+        return old;
+    }
+}
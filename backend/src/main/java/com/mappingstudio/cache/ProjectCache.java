@@ -0,0 +1,63 @@
+package com.mappingstudio.cache;
+
+import com.mappingstudio.model.ProjectEntity;
+import com.mappingstudio.repository.ProjectRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Read-through cache of project rows by id, for lookups that only need a project's name or schemas
+ * (export file names, existence checks). Entries are shared snapshots: callers must not modify them, and
+ * changeVersion / coverage on them are not kept current (use MappingChangeLog / CoverageCounters). Every
+ * write to a project evicts it, again after the transaction ends so a read inside it cannot re-cache the
+ * old row.
+ */
+@Component
+public class ProjectCache {
+
+    private final ProjectRepository projectRepo;
+    private final BoundedCache<Long, ProjectEntity> byId;
+
+    public ProjectCache(ProjectRepository projectRepo,
+                        @Value("${app.cache.project-max-entries:1000}") int maxEntries) {
+        this.projectRepo = projectRepo;
+        this.byId = BoundedCache.ofSize("projects", maxEntries);
+    }
+
+    public Optional<ProjectEntity> findById(Long id) {
+        if (id == null) return Optional.empty();
+        return Optional.ofNullable(byId.get(id, k -> projectRepo.findById(k).orElse(null)));
+    }
+
+    /** The project was saved or deleted. */
+    public void evict(Long id) {
+        if (id == null) return;
+        byId.invalidate(id);
+        afterCompletion(() -> byId.invalidate(id));
+    }
+
+    /** All projects were deleted. */
+    public void evictAll() {
+        byId.invalidateAll();
+        afterCompletion(byId::invalidateAll);
+    }
+
+    public Map<String, Object> stats() {
+        return byId.stats();
+    }
+
+    private static void afterCompletion(Runnable r) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) return;
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                r.run();
+            }
+        });
+    }
+}
@@ -0,0 +1,55 @@
+package com.mappingstudio.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import jakarta.servlet.*;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Keeps multipart bodies small everywhere except the schema upload. The container's multipart limits
+ * (spring.servlet.multipart) are set to what POST /api/schemas/upload needs for large samples; every other
+ * multipart request is refused with 413 above app.multipart.max-request-size, before the body is parsed.
+ * Bodies of unknown length (chunked) are refused with 411 outside the upload endpoint, since their size
+ * cannot be checked up front.
+ */
+@Component
+@Order(2)
+public class MultipartLimitFilter implements Filter {
+
+    private static final String LARGE_UPLOAD_PATH = "/api/schemas/upload";
+
+    @Value("${app.multipart.max-request-size:10485760}")
+    private long maxRequestBytes;
+
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+            throws IOException, ServletException {
+        HttpServletRequest req = (HttpServletRequest) request;
+        String contentType = req.getContentType();
+        if (contentType == null || !contentType.toLowerCase().startsWith("multipart/")) {
+            chain.doFilter(request, response);
+            return;
+        }
+        String path = req.getRequestURI();
+        String normalizedPath = path.endsWith("/") ? path.substring(0, path.length() - 1) : path;
+        if (LARGE_UPLOAD_PATH.equals(normalizedPath)) {
+            chain.doFilter(request, response);
+            return;
+        }
+        long length = req.getContentLengthLong();
+        if (length >= 0 && length <= maxRequestBytes) {
+            chain.doFilter(request, response);
+            return;
+        }
+        HttpServletResponse res = (HttpServletResponse) response;
+        res.setStatus(length < 0 ? HttpServletResponse.SC_LENGTH_REQUIRED : HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE);
+        res.setContentType("application/json");
+        res.getWriter().write(length < 0
+            ? "{\"error\":\"Content-Length required for file uploads\"}"
+            : "{\"error\":\"Upload exceeds the maximum request size of " + maxRequestBytes + " bytes\"}");
+    }
+}
@@ -0,0 +1,41 @@
+package com.mappingstudio.controller;
+
+import com.mappingstudio.cache.ProjectCache;
+import com.mappingstudio.edi.EdiSchemaCatalog;
+import com.mappingstudio.schema.SchemaBodyCache;
+import com.mappingstudio.schema.SchemaCache;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/** Hit / miss / eviction counts of the in-process caches, to size app.cache.* for a deployment. */
+@RestController
+@RequestMapping("/api/cache")
+public class CacheController {
+
+    private final ProjectCache projectCache;
+    private final SchemaCache schemaCache;
+    private final EdiSchemaCatalog ediCatalog;
+    private final SchemaBodyCache schemaBodies;
+
+    public CacheController(ProjectCache projectCache, SchemaCache schemaCache, EdiSchemaCatalog ediCatalog,
+                           SchemaBodyCache schemaBodies) {
+        this.projectCache = projectCache;
+        this.schemaCache = schemaCache;
+        this.ediCatalog = ediCatalog;
+        this.schemaBodies = schemaBodies;
+    }
+
+    @GetMapping("/stats")
+    public Map<String, Object> stats() {
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("projects", projectCache.stats());
+        out.put("schemas", schemaCache.stats());
+        out.put("ediSchemas", ediCatalog.stats());
+        out.put("schemaBodies", schemaBodies.stats());
+        return out;
+    }
+}
@@ -1,20 +1,25 @@
 package com.mappingstudio.controller;
 
 import com.mappingstudio.edi.EdiSchemaRegistry;
+import com.mappingstudio.schema.ParsedSchema;
+import com.mappingstudio.schema.SchemaBodyCache;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.List;
-import java.util.Map;
 
 @RestController
 @RequestMapping("/api/edi")
 public class EdiSchemaController {
 
     private final EdiSchemaRegistry registry;
+    private final SchemaBodyCache bodies;
 
     // Manual constructor (removes Lombok dependency)
-    public EdiSchemaController(EdiSchemaRegistry registry) {
+    public EdiSchemaController(EdiSchemaRegistry registry, SchemaBodyCache bodies) {
         this.registry = registry;
+        this.bodies = bodies;
     }
 
     @GetMapping("/schemas")
@@ -22,8 +27,11 @@ public class EdiSchemaController {
         return registry.listSchemas();
     }
 
+    /** Schema document from pre-serialized bytes with a strong ETag; clients revalidate on every use (304 when unchanged). */
     @GetMapping("/schema/{name}")
-    public Map<String, Object> load(@PathVariable String name) throws Exception {
-        return registry.loadSchema(name);
+    public ResponseEntity<byte[]> load(@PathVariable String name,
+                                       @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) throws Exception {
+        ParsedSchema schema = registry.getParsed(name);
+        return SchemaResponses.document(schema, bodies, acceptEncoding);
     }
 }
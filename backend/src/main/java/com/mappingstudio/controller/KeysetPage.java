@@ -0,0 +1,41 @@
+package com.mappingstudio.controller;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Keyset (cursor) pagination for list endpoints: the client passes the last id it received as {@code after}
+ * and the next page starts strictly past it, so each page is an index range scan no matter how deep the
+ * client has paged. Repositories fetch {@code limit + 1} rows; the extra row only tells whether a next page
+ * exists. Response: { items, limit, nextCursor } with nextCursor null on the last page.
+ */
+public final class KeysetPage {
+
+    public static final int DEFAULT_LIMIT = 100;
+    public static final int MAX_LIMIT = 1000;
+
+    private KeysetPage() {}
+
+    /** Requested page size clamped to [1, MAX_LIMIT]; DEFAULT_LIMIT when absent. */
+    public static int limit(Integer requested) {
+        return requested == null ? DEFAULT_LIMIT : Math.min(Math.max(1, requested), MAX_LIMIT);
+    }
+
+    /** True when the request asked for a page (either parameter present) rather than the full list. */
+    public static boolean requested(Long after, Integer limit) {
+        return after != null || limit != null;
+    }
+
+    /** @param rows up to limit + 1 rows in cursor order */
+    public static <T> Map<String, Object> of(List<T> rows, int limit, Function<T, Long> id) {
+        boolean more = rows.size() > limit;
+        List<T> items = more ? rows.subList(0, limit) : rows;
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("items", items);
+        out.put("limit", limit);
+        out.put("nextCursor", more ? id.apply(items.get(items.size() - 1)) : null);
+        return out;
+    }
+}
@@ -1,16 +1,28 @@
 package com.mappingstudio.controller;
 
+import com.mappingstudio.cache.ProjectCache;
 import com.mappingstudio.edi.EdiSchemaRegistry;
+import com.mappingstudio.mapping.CoverageCounters;
+import com.mappingstudio.mapping.MappingChangeLog;
+import com.mappingstudio.mapping.ProjectEventHub;
 import com.mappingstudio.mapping.MappingEntity;
 import com.mappingstudio.model.ProjectEntity;
 import com.mappingstudio.repository.MappingRepository;
 import com.mappingstudio.repository.ProjectRepository;
+import com.mappingstudio.schema.Coverage;
+import org.springframework.data.domain.Limit;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
 
 @RestController
 @RequestMapping("/api/projects")
@@ -19,37 +31,50 @@ public class ProjectController {
     private final ProjectRepository projectRepo;
     private final MappingRepository mappingRepo;
     private final EdiSchemaRegistry ediSchemaRegistry;
+    private final CoverageCounters coverageCounters;
+    private final MappingChangeLog changeLog;
+    private final ProjectEventHub eventHub;
+    private final ProjectCache projectCache;
 
-    public ProjectController(ProjectRepository projectRepo, MappingRepository mappingRepo, EdiSchemaRegistry ediSchemaRegistry) {
+    public ProjectController(ProjectRepository projectRepo, MappingRepository mappingRepo, EdiSchemaRegistry ediSchemaRegistry,
+                             CoverageCounters coverageCounters, MappingChangeLog changeLog, ProjectEventHub eventHub,
+                             ProjectCache projectCache) {
         this.projectRepo = projectRepo;
         this.mappingRepo = mappingRepo;
         this.ediSchemaRegistry = ediSchemaRegistry;
+        this.coverageCounters = coverageCounters;
+        this.changeLog = changeLog;
+        this.eventHub = eventHub;
+        this.projectCache = projectCache;
     }
 
+    /**
+     * Projects newest first, or with after/limit one keyset page { items, limit, nextCursor } (after = last id seen).
+     * Coverage comes from the incrementally maintained distinct target counts; the mappings table is not read.
+     */
     @GetMapping
-    public List<ProjectEntity> list() {
-        List<ProjectEntity> projects = projectRepo.findAllByOrderByIdDesc();
+    public ResponseEntity<?> list(@RequestParam(value = "after", required = false) Long after,
+                                  @RequestParam(value = "limit", required = false) Integer limit) {
+        if (!KeysetPage.requested(after, limit)) return ResponseEntity.ok(withCoverage(projectRepo.findAllByOrderByIdDesc()));
+        int n = KeysetPage.limit(limit);
+        List<ProjectEntity> rows = projectRepo.findByIdLessThanOrderByIdDesc(
+            after != null ? after : Long.MAX_VALUE, Limit.of(n + 1));
+        return ResponseEntity.ok(KeysetPage.of(withCoverage(rows), n, ProjectEntity::getId));
+    }
+
+    private List<ProjectEntity> withCoverage(List<ProjectEntity> projects) {
+        Map<String, Integer> leafCounts = new HashMap<>();
         for (ProjectEntity p : projects) {
-            int coverage = computeCoverage(p.getId(), p.getTargetSchema());
-            p.setCoverage(coverage);
+            p.setCoverage(computeCoverage(coverageCounters.distinctTargets(p.getId()), p.getTargetSchema(), leafCounts));
         }
         return projects;
     }
 
     /** Coverage = min(100, round(100 * distinct mapped targets / total target schema leaf count)). Never 100% for a single mapping (ready for deployment = more than one field mapped). */
-    private int computeCoverage(Long projectId, String targetSchema) {
-        List<MappingEntity> mappings = mappingRepo.findByProjectId(projectId);
-        long distinctTargets = mappings.stream()
-            .map(MappingEntity::getTarget)
-            .filter(t -> t != null && !t.isBlank())
-            .distinct()
-            .count();
-        int totalLeaves = ediSchemaRegistry.getTargetSchemaLeafCount(targetSchema);
-        if (totalLeaves <= 0) totalLeaves = 1;
-        int coverage = (int) Math.min(100, Math.round(100.0 * distinctTargets / totalLeaves));
-        // Don't show 100% for one mapping so "ready for deployment" requires more than one field
-        if (distinctTargets == 1 && coverage == 100) coverage = 99;
-        return coverage;
+    private int computeCoverage(long distinctTargets, String targetSchema, Map<String, Integer> leafCounts) {
+        int leaves = targetSchema == null ? ediSchemaRegistry.getTargetSchemaLeafCount(null)
+            : leafCounts.computeIfAbsent(targetSchema, ediSchemaRegistry::getTargetSchemaLeafCount);
+        return Coverage.percent(distinctTargets, leaves);
     }
 
     @PostMapping
@@ -60,10 +85,14 @@ public class ProjectController {
     }
 
     /** Deletes all projects and all mappings. Use to clear the DB. Must be before /{id} so "clear-all" is not matched as id. */
+    @Transactional
     @DeleteMapping("/clear-all")
     public void clearAll() {
+        coverageCounters.cleared();
+        changeLog.cleared();
         mappingRepo.deleteAll();
         projectRepo.deleteAll();
+        projectCache.evictAll();
     }
 
     @PatchMapping("/{id}")
@@ -72,16 +101,41 @@ public class ProjectController {
         if (existing == null) return ResponseEntity.notFound().build();
         if (body.containsKey("status")) existing.setStatus(body.get("status"));
         if (body.containsKey("updated")) existing.setUpdated(body.get("updated"));
-        return ResponseEntity.ok(projectRepo.save(existing));
+        ProjectEntity saved = projectRepo.save(existing);
+        projectCache.evict(id);
+        eventHub.publish(id, "project", null, saved);
+        return ResponseEntity.ok(saved);
+    }
+
+    /**
+     * Server-sent events for collaborative editing: "ready" (current change version), "mappings" (id = change
+     * version; { changed, deleted } or { resync: true }), "project" (status updates) and "deleted". Use the
+     * accessKey query parameter, as EventSource cannot send headers.
+     */
+    @GetMapping(value = "/{id}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> events(@PathVariable Long id) {
+        Long version = changeLog.current(id);
+        if (version == null) return ResponseEntity.notFound().build();
+        return ResponseEntity.ok(eventHub.subscribe(id, version));
+    }
+
+    @ExceptionHandler(RejectedExecutionException.class)
+    public ResponseEntity<Map<String, String>> handleTooManyStreams(RejectedExecutionException e) {
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+            .header(HttpHeaders.RETRY_AFTER, "30")
+            .body(Map.of("error", "Too many event streams", "message", "Event stream limit reached, retry later"));
     }
 
     @Transactional
     @DeleteMapping("/{id}")
     public void delete(@PathVariable Long id) {
-        if (!projectRepo.existsById(id)) return;
+        if (projectCache.findById(id).isEmpty()) return;
         for (MappingEntity m : mappingRepo.findByProjectId(id)) {
             mappingRepo.delete(m);
         }
+        coverageCounters.projectDeleted(id);
+        changeLog.projectDeleted(id);
         projectRepo.deleteById(id);
+        projectCache.evict(id);
     }
 }
@@ -1,36 +1,55 @@
 package com.mappingstudio.controller;
 
-import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.mappingstudio.model.CustomSchemaEntity;
+import com.mappingstudio.schema.CompactSchemaTree;
+import com.mappingstudio.schema.ParsedSchema;
+import com.mappingstudio.schema.SchemaBodyCache;
+import com.mappingstudio.schema.SchemaSearchIndex;
 import com.mappingstudio.schema.SchemaService;
+import com.mappingstudio.schema.SchemaUploadJobs;
 import com.mappingstudio.schema.SchemaUploadService;
+import com.mappingstudio.schema.SchemaVersionService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
- * Unified schema API: list (EDI + custom), load by id, upload (non-EDI).
+ * Unified schema API: list (EDI + custom), load by id, paged child nodes, field search, upload (non-EDI).
  */
 @RestController
 @RequestMapping("/api/schemas")
 public class SchemaController {
 
-    private static final ObjectMapper MAPPER = new ObjectMapper();
     private static final Logger log = LoggerFactory.getLogger(SchemaController.class);
+    private static final int DEFAULT_NODE_PAGE = 200;
+    private static final int MAX_NODE_PAGE = 2000;
+    private static final int MAX_NODE_DEPTH = 8;
+    private static final int MAX_SEARCH_RESULTS = 100;
 
     private final SchemaService schemaService;
     private final SchemaUploadService uploadService;
+    private final SchemaUploadJobs uploadJobs;
+    private final SchemaVersionService versionService;
+    private final SchemaBodyCache bodies;
 
-    public SchemaController(SchemaService schemaService, SchemaUploadService uploadService) {
+    public SchemaController(SchemaService schemaService, SchemaUploadService uploadService, SchemaUploadJobs uploadJobs,
+                            SchemaVersionService versionService, SchemaBodyCache bodies) {
         this.schemaService = schemaService;
         this.uploadService = uploadService;
+        this.uploadJobs = uploadJobs;
+        this.versionService = versionService;
+        this.bodies = bodies;
     }
 
     /** List all schemas: EDI + uploaded custom. Each: { id, name, kind }. */
@@ -39,28 +58,136 @@ public class SchemaController {
         return schemaService.listAll();
     }
 
-    /** Load schema by id (EDI key e.g. 834_5010, or custom-{id}). Returns { tree, name, ... }. */
+    /**
+     * Load schema by id (EDI key e.g. 834_5010, or custom-{id}). Returns { tree, name, ... }. Trees over
+     * ParsedSchema.DOCUMENT_MAX_NODES come back truncated to their top levels ("truncated": true, nodeCount,
+     * leafCount, childCount on unexpanded nodes); page further with /nodes. Served from pre-serialized (optionally gzip/deflate) bytes with a strong ETag; see SchemaResponses.
+     */
     @GetMapping("/{id}")
-    public Map<String, Object> load(@PathVariable String id) throws Exception {
-        return schemaService.loadById(id);
+    public ResponseEntity<byte[]> load(@PathVariable String id,
+                                       @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) throws Exception {
+        ParsedSchema schema = schemaService.getParsed(id);
+        return SchemaResponses.document(schema, bodies, acceptEncoding);
+    }
+
+    /**
+     * Children of one node, paged, for lazy tree expansion of large schemas. parent is a node key (omit for the
+     * top level); depth is how many levels below each returned node to include (1 = just the nodes). Key lookup
+     * uses the tree's sorted key index, so nothing is re-walked.
+     * Returns { parent, offset, limit, total, nodes: [ { title, key, isLeaf, childCount?, children? } ] }.
+     */
+    @GetMapping("/{id}/nodes")
+    public Map<String, Object> nodes(@PathVariable String id,
+                                     @RequestParam(value = "parent", required = false) String parent,
+                                     @RequestParam(value = "depth", defaultValue = "1") int depth,
+                                     @RequestParam(value = "offset", defaultValue = "0") int offset,
+                                     @RequestParam(value = "limit", defaultValue = "" + DEFAULT_NODE_PAGE) int limit) throws Exception {
+        CompactSchemaTree tree = schemaService.getParsed(id).getTree();
+        int parentNode = -1;
+        if (parent != null && !parent.isEmpty()) {
+            parentNode = tree.indexOf(parent);
+            if (parentNode < 0) throw new IllegalArgumentException("Node not found: " + parent);
+        }
+        int pageSize = Math.min(Math.max(1, limit), MAX_NODE_PAGE);
+        int levels = Math.min(Math.max(1, depth), MAX_NODE_DEPTH);
+        CompactSchemaTree.Slice slice = tree.children(parentNode, offset, pageSize, levels);
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("parent", parent);
+        out.put("offset", Math.max(0, offset));
+        out.put("limit", pageSize);
+        out.put("total", slice.total());
+        out.put("nodes", slice);
+        return out;
+    }
+
+    /**
+     * Search leaf fields by key or title (e.g. "NM109", "subscriber date of birth"): prefix, token and substring
+     * matching over the schema's prebuilt index. Returns up to limit hits: [ { key, title, path: [keys...] } ].
+     */
+    @GetMapping("/{id}/search")
+    public List<Map<String, Object>> search(@PathVariable String id,
+                                            @RequestParam("q") String q,
+                                            @RequestParam(value = "limit", defaultValue = "20") int limit) throws Exception {
+        ParsedSchema schema = schemaService.getParsed(id);
+        CompactSchemaTree tree = schema.getTree();
+        SchemaSearchIndex index = schema.getSearchIndex();
+        List<Map<String, Object>> out = new ArrayList<>();
+        for (SchemaSearchIndex.Hit hit : index.search(q, Math.min(Math.max(1, limit), MAX_SEARCH_RESULTS))) {
+            Map<String, Object> m = new LinkedHashMap<>();
+            m.put("key", tree.key(hit.node()));
+            m.put("title", tree.title(hit.node()));
+            m.put("path", index.path(hit.node()));
+            out.add(m);
+        }
+        return out;
     }
 
     /**
      * Upload a non-EDI schema. Types: json_sample, xsd, csv_sample, excel_spec.
-     * Returns { id, name, tree } so frontend can add to list and use tree immediately.
+     * Returns { id, name, leafCount, nodeCount, maxDepth, total, nodes, previousVersion? }: the top-level nodes (first
+     * page, as from /{id}/nodes) rather than the whole tree, which can be very large; clients expand it via /nodes.
+     * With async=true the file is queued for a background worker instead: 202 { jobId, status, ... } with a
+     * Location to poll (GET /api/schemas/jobs/{jobId}), or 429 when the upload queue is full.
      */
     @PostMapping("/upload")
-    public Map<String, Object> upload(
+    public ResponseEntity<Map<String, Object>> upload(
             @RequestParam("file") MultipartFile file,
             @RequestParam("type") String type,
-            @RequestParam(value = "name", required = false) String name) throws Exception {
+            @RequestParam(value = "name", required = false) String name,
+            @RequestParam(value = "async", defaultValue = "false") boolean async) throws Exception {
+        if (async) {
+            SchemaUploadJobs.Job job = uploadJobs.submit(file, type, name);
+            return ResponseEntity.accepted()
+                .location(URI.create("/api/schemas/jobs/" + job.getId()))
+                .body(job.toMap());
+        }
         CustomSchemaEntity entity = uploadService.upload(file, type, name);
-        List<Map<String, Object>> tree = MAPPER.readValue(entity.getTreeJson(), new TypeReference<>() {});
-        return Map.of(
-            "id", "custom-" + entity.getId(),
-            "name", entity.getName(),
-            "tree", tree
-        );
+        String id = "custom-" + entity.getId();
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("id", id);
+        body.put("name", entity.getName());
+        CompactSchemaTree tree = schemaService.getParsed(id).getTree();
+        CompactSchemaTree.Slice roots = tree.children(-1, 0, DEFAULT_NODE_PAGE, 1);
+        body.put("leafCount", tree.leafCount());
+        body.put("nodeCount", tree.size());
+        body.put("maxDepth", tree.maxDepth());
+        body.put("total", roots.total());
+        body.put("nodes", roots);
+        if (entity.getPreviousVersionId() != null) body.put("previousVersion", "custom-" + entity.getPreviousVersionId());
+        return ResponseEntity.ok(body);
+    }
+
+    /**
+     * Leaf diff between two versions of a custom schema: { from, to, added, removed, renamed: [{from, to}],
+     * unchanged, projects: [{ id, name, orphanedMappings, coverage? }] }. from defaults to the version id replaced.
+     */
+    @GetMapping("/{id}/diff")
+    public Map<String, Object> diff(@PathVariable String id, @RequestParam(value = "from", required = false) String from) {
+        return versionService.diff(from != null && !from.isBlank() ? customId(from) : null, customId(id));
+    }
+
+    private static long customId(String id) {
+        if (id == null || !id.startsWith("custom-")) throw new IllegalArgumentException("Not a custom schema id: " + id);
+        try {
+            return Long.parseLong(id.substring(7));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Not a custom schema id: " + id);
+        }
+    }
+
+    /** Status of an async upload: { jobId, status (queued|running|done|failed), progress, result?, error? }. */
+    @GetMapping("/jobs/{jobId}")
+    public ResponseEntity<Map<String, Object>> uploadJob(@PathVariable String jobId) {
+        return uploadJobs.get(jobId)
+            .map(job -> ResponseEntity.ok(job.toMap()))
+            .orElse(ResponseEntity.notFound().build());
+    }
+
+    @ExceptionHandler(RejectedExecutionException.class)
+    public ResponseEntity<Map<String, String>> handleQueueFull(RejectedExecutionException e) {
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+            .header(HttpHeaders.RETRY_AFTER, "30")
+            .body(Map.of("error", "Too many uploads", "message", "Schema upload queue is full, retry later"));
     }
 
     @ExceptionHandler(IllegalArgumentException.class)
@@ -0,0 +1,68 @@
+package com.mappingstudio.controller;
+
+import com.mappingstudio.schema.ParsedSchema;
+import com.mappingstudio.schema.SchemaBodyCache;
+import com.mappingstudio.schema.SchemaBodyCache.Coding;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+
+/**
+ * Builds schema document responses from the pre-serialized bytes held by {@link SchemaBodyCache}:
+ * identity, gzip or deflate body depending on Accept-Encoding, a per-encoding strong ETag
+ * (If-None-Match → 304 is evaluated by Spring for ResponseEntity), and a revalidate-always cache policy.
+ */
+final class SchemaResponses {
+
+    private SchemaResponses() {}
+
+    /**
+     * Clients always revalidate (no-cache): schema URLs are keyed by schema id, not content, and the bytes
+     * behind them change on redeploy (bundled files) or at runtime (external overrides, new uploads). An
+     * unchanged schema costs a 304 with the strong ETag.
+     */
+    static ResponseEntity<byte[]> document(ParsedSchema schema, SchemaBodyCache bodies, String acceptEncoding) {
+        CacheControl cache = CacheControl.noCache().cachePrivate();
+        String etag = schema.getETag();
+        ResponseEntity.BodyBuilder ok = ResponseEntity.ok()
+            .contentType(MediaType.APPLICATION_JSON)
+            .cacheControl(cache)
+            .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        if (accepts(acceptEncoding, "gzip")) {
+            return ok.eTag(withSuffix(etag, "gzip")).header(HttpHeaders.CONTENT_ENCODING, "gzip").body(bodies.body(schema, Coding.GZIP));
+        }
+        if (accepts(acceptEncoding, "deflate")) {
+            return ok.eTag(withSuffix(etag, "deflate")).header(HttpHeaders.CONTENT_ENCODING, "deflate").body(bodies.body(schema, Coding.DEFLATE));
+        }
+        return ok.eTag(etag).body(bodies.body(schema, Coding.IDENTITY));
+    }
+
+    /** Distinct strong tag per content-coding, since the bytes differ: "abc" -> "abc-gzip". */
+    private static String withSuffix(String etag, String coding) {
+        return etag.substring(0, etag.length() - 1) + "-" + coding + "\"";
+    }
+
+    /** True if the Accept-Encoding header lists coding (or *) without q=0. */
+    static boolean accepts(String acceptEncoding, String coding) {
+        if (acceptEncoding == null || acceptEncoding.isBlank()) return false;
+        for (String part : acceptEncoding.split(",")) {
+            String[] tokens = part.trim().split(";");
+            String name = tokens[0].trim();
+            if (!name.equalsIgnoreCase(coding) && !name.equals("*")) continue;
+            boolean rejected = false;
+            for (int i = 1; i < tokens.length; i++) {
+                String param = tokens[i].trim().replace(" ", "");
+                if (param.startsWith("q=")) {
+                    try {
+                        rejected = Double.parseDouble(param.substring(2)) <= 0;
+                    } catch (NumberFormatException e) {
+                        rejected = true;
+                    }
+                }
+            }
+            if (!rejected) return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,238 @@
+package com.mappingstudio.edi;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.mappingstudio.cache.BoundedCache;
+import com.mappingstudio.schema.ParsedSchema;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Catalog of EDI schema files found in classpath:schemas/edi/ and an optional external directory
+ * (app.edi.schema-dir). Startup only reads each file's header (key, name, version, transaction) into a
+ * small manifest; full trees are parsed on first use and kept in an LRU bounded by total tree nodes
+ * (app.cache.edi-schema-max-nodes), so an external directory with many large schemas cannot grow the heap
+ * without limit. Files in the external directory override bundled ones with the same key and are
+ * hot-reloaded when they change on disk.
+ */
+@Component
+public class EdiSchemaCatalog {
+
+    private static final Logger log = LoggerFactory.getLogger(EdiSchemaCatalog.class);
+    private static final String CLASSPATH_PATTERN = "classpath*:schemas/edi/*.json";
+    private static final JsonFactory JSON = new JsonFactory();
+
+    /**
+     * Header of one schema file. name is the UI display name ("displayName" in the file, else "name");
+     * aliases are other names projects may store (e.g. the file "name" when displayName differs).
+     */
+    public record Manifest(String key, String name, String version, String transaction, List<String> aliases, boolean external) {}
+
+    private record Source(Manifest manifest, Resource resource) {}
+
+    private final String externalDir;
+    /** Bundled schemas by key; fixed after startup. */
+    private final Map<String, Source> bundled = new ConcurrentHashMap<>();
+    /** External schemas by key; updated by the watcher. */
+    private final Map<String, Source> external = new ConcurrentHashMap<>();
+    /** Lazily parsed trees by key; evicted when the backing file changes or by LRU. */
+    private final BoundedCache<String, ParsedSchema> parsed;
+    /** Display name or alias -> key. Rebuilt whenever the manifest set changes. */
+    private volatile Map<String, String> keyByName = Map.of();
+
+    private volatile WatchService watchService;
+    private Thread watcher;
+
+    public EdiSchemaCatalog(@Value("${app.edi.schema-dir:}") String externalDir,
+                            @Value("${app.cache.edi-schema-max-nodes:1000000}") long maxNodes) {
+        this.externalDir = externalDir == null ? "" : externalDir.trim();
+        this.parsed = new BoundedCache<>("ediSchemas", maxNodes, p -> p.getTree().size());
+    }
+
+    @PostConstruct
+    public void init() throws IOException {
+        for (Resource r : new PathMatchingResourcePatternResolver().getResources(CLASSPATH_PATTERN)) {
+            String file = r.getFilename();
+            if (file == null) continue;
+            try {
+                Manifest m = readManifest(keyOf(file), r, false);
+                bundled.put(m.key(), new Source(m, r));
+            } catch (Exception e) {
+                log.warn("Skipping EDI schema {}: {}", file, e.getMessage());
+            }
+        }
+        if (!externalDir.isEmpty()) {
+            Path dir = Paths.get(externalDir);
+            if (Files.isDirectory(dir)) {
+                try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "*.json")) {
+                    for (Path p : files) loadExternal(p);
+                }
+                startWatcher(dir);
+            } else {
+                log.warn("app.edi.schema-dir {} is not a directory; only bundled EDI schemas are available", dir);
+            }
+        }
+        rebuildNameIndex();
+        log.info("EDI schema catalog: {} bundled, {} external", bundled.size(), external.size());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        WatchService ws = watchService;
+        if (ws != null) {
+            try { ws.close(); } catch (IOException ignored) {}
+        }
+        if (watcher != null) watcher.interrupt();
+    }
+
+    /** All manifests, sorted by key. External entries replace bundled ones with the same key. */
+    public List<Manifest> list() {
+        Map<String, Manifest> merged = new TreeMap<>();
+        bundled.forEach((k, s) -> merged.put(k, s.manifest()));
+        external.forEach((k, s) -> merged.put(k, s.manifest()));
+        return new ArrayList<>(merged.values());
+    }
+
+    /** Key for a display name or alias (e.g. "EDI 837P" -> 837P_5010). */
+    public Optional<String> keyForName(String name) {
+        return name == null ? Optional.empty() : Optional.ofNullable(keyByName.get(name));
+    }
+
+    /**
+     * Parsed tree for key; parsed on first use, then cached until the file changes or the entry is evicted.
+     * A parse that overlaps a reload of the file is returned but not cached (see BoundedCache).
+     */
+    public ParsedSchema getParsed(String key) throws IOException {
+        try {
+            return parsed.get(key, k -> {
+                // Resolved inside the load, so a reload that swaps the source is always seen by the cache guard
+                Source s = source(k);
+                if (s == null) throw new IllegalArgumentException("EDI schema not found: " + k);
+                try (InputStream in = s.resource().getInputStream()) {
+                    return ParsedSchema.readJson(in);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /** Hit / miss / eviction counts of the parsed tree cache, for GET /api/cache/stats. */
+    public Map<String, Object> stats() {
+        return parsed.stats();
+    }
+
+    private Source source(String key) {
+        if (key == null) return null;
+        Source s = external.get(key);
+        return s != null ? s : bundled.get(key);
+    }
+
+    /** Read only the top-level header fields; the "tree" array is skipped without being materialized. */
+    private static Manifest readManifest(String key, Resource r, boolean isExternal) throws IOException {
+        String name = null, displayName = null, version = null, transaction = null;
+        try (InputStream in = r.getInputStream(); JsonParser p = JSON.createParser(in)) {
+            if (p.nextToken() != JsonToken.START_OBJECT) throw new IOException("Expected JSON object");
+            while (p.nextToken() == JsonToken.FIELD_NAME) {
+                String field = p.getCurrentName();
+                JsonToken t = p.nextToken();
+                if (t == JsonToken.START_OBJECT || t == JsonToken.START_ARRAY) {
+                    p.skipChildren();
+                    continue;
+                }
+                switch (field) {
+                    case "name" -> name = p.getValueAsString();
+                    case "displayName" -> displayName = p.getValueAsString();
+                    case "version" -> version = p.getValueAsString();
+                    case "transaction" -> transaction = p.getValueAsString();
+                    default -> { }
+                }
+            }
+        }
+        String shown = displayName != null && !displayName.isBlank() ? displayName : name != null ? name : key;
+        List<String> aliases = name != null && !name.equals(shown) ? List.of(name) : List.of();
+        return new Manifest(key, shown, version, transaction, aliases, isExternal);
+    }
+
+    /** (Re)read an external file's manifest. On failure (e.g. file still being written) the previous entry is kept. */
+    private boolean loadExternal(Path p) {
+        String file = p.getFileName().toString();
+        if (!file.endsWith(".json")) return false;
+        String key = keyOf(file);
+        try {
+            Resource r = new FileSystemResource(p);
+            Manifest m = readManifest(key, r, true);
+            external.put(key, new Source(m, r));
+            parsed.invalidate(key);
+            return true;
+        } catch (Exception e) {
+            log.warn("Skipping external EDI schema {}: {}", p, e.getMessage());
+            return false;
+        }
+    }
+
+    private void rebuildNameIndex() {
+        Map<String, String> index = new HashMap<>();
+        for (Manifest m : list()) {
+            index.put(m.name(), m.key());
+            for (String alias : m.aliases()) index.putIfAbsent(alias, m.key());
+        }
+        keyByName = Map.copyOf(index);
+    }
+
+    private void startWatcher(Path dir) throws IOException {
+        watchService = dir.getFileSystem().newWatchService();
+        dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+            StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+        watcher = new Thread(() -> watch(dir), "edi-schema-watcher");
+        watcher.setDaemon(true);
+        watcher.start();
+    }
+
+    private void watch(Path dir) {
+        while (!Thread.currentThread().isInterrupted()) {
+            WatchKey wk;
+            try {
+                wk = watchService.take();
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            }
+            for (WatchEvent<?> event : wk.pollEvents()) {
+                if (event.kind() == StandardWatchEventKinds.OVERFLOW) continue;
+                Path file = dir.resolve((Path) event.context());
+                if (!file.getFileName().toString().endsWith(".json")) continue;
+                if (event.kind() == StandardWatchEventKinds.ENTRY_DELETE) {
+                    String key = keyOf(file.getFileName().toString());
+                    external.remove(key);
+                    parsed.invalidate(key);
+                    log.info("EDI schema removed: {}", key);
+                } else if (loadExternal(file)) {
+                    log.info("EDI schema reloaded: {}", file.getFileName());
+                }
+            }
+            rebuildNameIndex();
+            if (!wk.reset()) return;
+        }
+    }
+
+    private static String keyOf(String fileName) {
+        return fileName.endsWith(".json") ? fileName.substring(0, fileName.length() - 5) : fileName;
+    }
+}
@@ -1,6 +1,5 @@
 package com.mappingstudio.export;
 
-import com.mappingstudio.mapping.MappingEntity;
 import org.apache.poi.ss.usermodel.*;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 import org.springframework.stereotype.Service;
@@ -26,19 +25,19 @@ public class ExcelExportService {
     }
 
     /** Only include row if at least one of source/logic/target has visible content. */
-    private static boolean shouldInclude(MappingEntity m) {
-        return hasVisibleContent(m.getSource()) || hasVisibleContent(m.getLogic()) || hasVisibleContent(m.getTarget());
+    private static boolean shouldInclude(MappingExportRow m) {
+        return hasVisibleContent(m.source()) || hasVisibleContent(m.logic()) || hasVisibleContent(m.target());
     }
 
-    private static String key(MappingEntity m) {
-        return trim(m.getSource()) + "|" + trim(m.getLogic()) + "|" + trim(m.getTarget());
+    private static String key(MappingExportRow m) {
+        return trim(m.source()) + "|" + trim(m.logic()) + "|" + trim(m.target());
     }
 
-    public byte[] generateExcel(List<MappingEntity> mappings) throws Exception {
+    public byte[] generateExcel(List<MappingExportRow> mappings) throws Exception {
 
         Set<String> seen = new LinkedHashSet<>();
-        List<MappingEntity> rowsToWrite = new ArrayList<>();
-        for (MappingEntity m : mappings) {
+        List<MappingExportRow> rowsToWrite = new ArrayList<>();
+        for (MappingExportRow m : mappings) {
             if (!shouldInclude(m)) continue;
             if (!seen.add(key(m))) continue;
             rowsToWrite.add(m);
@@ -57,18 +56,18 @@ public class ExcelExportService {
         header.createCell(5).setCellValue("Review later");
 
         int rowIdx = 1;
-        for (MappingEntity m : rowsToWrite) {
-            String src = trim(m.getSource());
-            String log = trim(m.getLogic());
-            String tgt = trim(m.getTarget());
-            if (!hasVisibleContent(m.getSource()) && !hasVisibleContent(m.getLogic()) && !hasVisibleContent(m.getTarget())) continue;
+        for (MappingExportRow m : rowsToWrite) {
+            String src = trim(m.source());
+            String log = trim(m.logic());
+            String tgt = trim(m.target());
+            if (!hasVisibleContent(m.source()) && !hasVisibleContent(m.logic()) && !hasVisibleContent(m.target())) continue;
             Row row = sheet.createRow(rowIdx++);
             row.createCell(0).setCellValue(src);
             row.createCell(1).setCellValue(log);
             row.createCell(2).setCellValue(tgt);
-            row.createCell(3).setCellValue(m.getComments() != null ? m.getComments().trim() : "");
-            row.createCell(4).setCellValue(m.getClientComments() != null ? m.getClientComments().trim() : "");
-            row.createCell(5).setCellValue(Boolean.TRUE.equals(m.getReviewLater()) ? "Y" : "");
+            row.createCell(3).setCellValue(m.comments() != null ? m.comments().trim() : "");
+            row.createCell(4).setCellValue(m.clientComments() != null ? m.clientComments().trim() : "");
+            row.createCell(5).setCellValue(Boolean.TRUE.equals(m.reviewLater()) ? "Y" : "");
         }
 
         int lastRowIndex = rowIdx - 1;
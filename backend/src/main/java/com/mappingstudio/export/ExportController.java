@@ -1,9 +1,8 @@
 package com.mappingstudio.export;
 
-import com.mappingstudio.mapping.MappingEntity;
+import com.mappingstudio.cache.ProjectCache;
 import com.mappingstudio.model.ProjectEntity;
 import com.mappingstudio.repository.MappingRepository;
-import com.mappingstudio.repository.ProjectRepository;
 import lombok.RequiredArgsConstructor;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
@@ -18,13 +17,13 @@ import java.util.List;
 public class ExportController {
 
     private final MappingRepository mappingRepo;
-    private final ProjectRepository projectRepo;
+    private final ProjectCache projectCache;
     private final ExcelExportService excelService;
 
     @GetMapping("/excel/{project}")
     public ResponseEntity<byte[]> exportExcelByName(@PathVariable String project)
             throws Exception {
-        List<MappingEntity> mappings = mappingRepo.findByProjectName(project);
+        List<MappingExportRow> mappings = mappingRepo.findExportRowsByProjectName(project);
         byte[] file = excelService.generateExcel(mappings);
         return ResponseEntity.ok()
                 .header(HttpHeaders.CONTENT_DISPOSITION,
@@ -36,9 +35,9 @@ public class ExportController {
     @GetMapping("/excel/project/{projectId}")
     public ResponseEntity<byte[]> exportExcelByProjectId(@PathVariable Long projectId)
             throws Exception {
-        List<MappingEntity> mappings = mappingRepo.findByProjectId(projectId);
+        List<MappingExportRow> mappings = mappingRepo.findExportRowsByProjectId(projectId);
         String filename = projectId + "_mapping.xlsx";
-        ProjectEntity proj = projectRepo.findById(projectId).orElse(null);
+        ProjectEntity proj = projectCache.findById(projectId).orElse(null);
         if (proj != null && proj.getName() != null)
             filename = proj.getName() + "_mapping.xlsx";
         byte[] file = excelService.generateExcel(mappings);
@@ -0,0 +1,5 @@
+package com.mappingstudio.export;
+
+/** The columns the Excel export writes, read with a constructor query instead of managed MappingEntity rows. */
+public record MappingExportRow(String source, String logic, String target, String comments, String clientComments,
+                               Boolean reviewLater) {}
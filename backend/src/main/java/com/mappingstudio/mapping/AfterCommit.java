@@ -0,0 +1,24 @@
+package com.mappingstudio.mapping;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/** Side effects (in-memory counters, pushed events) that must only happen once the database change is committed. */
+final class AfterCommit {
+
+    private AfterCommit() {}
+
+    /** Run after the current transaction commits; immediately when there is none. Dropped on rollback. */
+    static void run(Runnable r) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            r.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                r.run();
+            }
+        });
+    }
+}
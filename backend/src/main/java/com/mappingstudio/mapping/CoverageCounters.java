@@ -0,0 +1,189 @@
+package com.mappingstudio.mapping;
+
+import com.mappingstudio.repository.MappingRepository;
+import com.mappingstudio.repository.ProjectTargetRefRepository;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Distinct mapped target count per project, maintained incrementally instead of recomputed. Every mapping
+ * change passes the target it added or removed; the persisted per-(project, target) reference count is
+ * updated in the caller's transaction and the in-memory distinct count is adjusted after commit, so the
+ * project list reads coverage without touching the mappings table. Orphaned mappings (their source or
+ * target is gone from the schema) do not count: flagging one removes its reference, clearing the flag adds it back.
+ */
+@Service
+public class CoverageCounters {
+
+    private static final Logger log = LoggerFactory.getLogger(CoverageCounters.class);
+
+    private static final String INCREMENT = "INSERT INTO project_target_refs (project_id, target, ref_count) VALUES (?, ?, ?)"
+        + " ON CONFLICT (project_id, target) DO UPDATE SET ref_count = ref_count + ?";
+    private static final String DECREMENT =
+        "UPDATE project_target_refs SET ref_count = ref_count - ? WHERE project_id = ? AND target = ?";
+    private static final String DELETE_UNREFERENCED =
+        "DELETE FROM project_target_refs WHERE project_id = ? AND target = ? AND ref_count <= 0";
+    private static final String REF_COUNT = "SELECT ref_count FROM project_target_refs WHERE project_id = ? AND target = ?";
+
+    private final ProjectTargetRefRepository refRepo;
+    private final MappingRepository mappingRepo;
+    private final JdbcTemplate jdbc;
+    private final TransactionTemplate tx;
+    private final Map<Long, Integer> distinctByProject = new ConcurrentHashMap<>();
+
+    public CoverageCounters(ProjectTargetRefRepository refRepo, MappingRepository mappingRepo, JdbcTemplate jdbc,
+                            PlatformTransactionManager txManager) {
+        this.refRepo = refRepo;
+        this.mappingRepo = mappingRepo;
+        this.jdbc = jdbc;
+        this.tx = new TransactionTemplate(txManager);
+    }
+
+    /** Rebuild the summary table when it does not match the mappings (first start, or rows edited outside the app). */
+    @PostConstruct
+    public void load() {
+        tx.executeWithoutResult(s -> {
+            long refs = refRepo.totalRefs();
+            long mapped = mappingRepo.countTargetReferences();
+            if (refs != mapped) {
+                jdbc.update("DELETE FROM project_target_refs");
+                jdbc.update("INSERT INTO project_target_refs (project_id, target, ref_count)"
+                    + " SELECT project_id, target, COUNT(*) FROM mappings"
+                    + " WHERE project_id IS NOT NULL AND target IS NOT NULL AND " + MappingRepository.TARGET_NOT_BLANK
+                    + " AND " + MappingRepository.NOT_ORPHANED
+                    + " GROUP BY project_id, target");
+                log.info("Rebuilt project target references ({} mapping(s))", mapped);
+            }
+        });
+        distinctByProject.clear();
+        for (Object[] row : refRepo.countByProject()) {
+            distinctByProject.put((Long) row[0], ((Number) row[1]).intValue());
+        }
+    }
+
+    /** Distinct non-empty targets mapped in the project. */
+    public long distinctTargets(Long projectId) {
+        return projectId == null ? 0 : distinctByProject.getOrDefault(projectId, 0);
+    }
+
+    /** A mapping was created. */
+    public void added(MappingEntity m) {
+        changed(null, m);
+    }
+
+    /** A mapping was deleted. */
+    public void removed(MappingEntity m) {
+        changed(Ref.of(m), null);
+    }
+
+    /** A mapping that counted as before (taken with {@link Ref#of} ahead of the change) now stands as m. */
+    public void changed(Ref before, MappingEntity m) {
+        Batch batch = batch();
+        batch.changed(before, Ref.of(m));
+        batch.apply();
+    }
+
+    /** Collects many mapping changes and writes one net update per (project, target). */
+    public Batch batch() {
+        return new Batch();
+    }
+
+    public final class Batch {
+        private final Map<Ref, Integer> deltas = new LinkedHashMap<>();
+
+        private Batch() {}
+
+        public void added(MappingEntity m) {
+            changed(null, Ref.of(m));
+        }
+
+        public void removed(MappingEntity m) {
+            changed(Ref.of(m), null);
+        }
+
+        /** before and after are the counted references of one mapping (null when it did not or does not count). */
+        public void changed(Ref before, Ref after) {
+            if (Objects.equals(before, after)) return;
+            if (before != null) deltas.merge(before, -1, Integer::sum);
+            if (after != null) deltas.merge(after, 1, Integer::sum);
+        }
+
+        /**
+         * Mappings of the project are about to be flagged orphaned (or cleared): rows are [target, count] of the
+         * mappings whose flag changes, so flagged ones stop counting and cleared ones count again.
+         */
+        public void orphaned(Long projectId, List<Object[]> targetCounts, boolean orphaned) {
+            for (Object[] row : targetCounts) {
+                String target = (String) row[0];
+                if (!counted(projectId, target)) continue;
+                int n = ((Number) row[1]).intValue();
+                deltas.merge(new Ref(projectId, target), orphaned ? -n : n, Integer::sum);
+            }
+        }
+
+        /**
+         * Write the net changes in the current transaction. Plain JDBC on the transaction's connection: a
+         * repository native query would first flush (and dirty-check) every entity of a large batch, per target.
+         */
+        public void apply() {
+            for (Map.Entry<Ref, Integer> e : deltas.entrySet()) {
+                Ref r = e.getKey();
+                int delta = e.getValue();
+                if (delta > 0) {
+                    jdbc.update(INCREMENT, r.projectId(), r.target(), delta, delta);
+                    // Rows only exist while positive, so ending at exactly delta means the target is new
+                    List<Integer> count = jdbc.queryForList(REF_COUNT, Integer.class, r.projectId(), r.target());
+                    if (count.size() == 1 && count.get(0) == delta) adjust(r.projectId(), 1);
+                } else if (delta < 0) {
+                    jdbc.update(DECREMENT, -delta, r.projectId(), r.target());
+                    if (jdbc.update(DELETE_UNREFERENCED, r.projectId(), r.target()) > 0) adjust(r.projectId(), -1);
+                }
+            }
+            deltas.clear();
+        }
+    }
+
+    /** A (project, target) reference of a mapping that counts toward coverage. */
+    public record Ref(Long projectId, String target) {
+
+        /** The mapping's reference, or null when it does not count (no project, blank target, or orphaned). */
+        public static Ref of(MappingEntity m) {
+            if (m == null || Boolean.TRUE.equals(m.getOrphaned()) || !counted(m.getProjectId(), m.getTarget())) return null;
+            return new Ref(m.getProjectId(), m.getTarget());
+        }
+    }
+
+    /** All mappings of the project are being deleted. */
+    public void projectDeleted(Long projectId) {
+        refRepo.deleteByProject(projectId);
+        AfterCommit.run(() -> distinctByProject.remove(projectId));
+    }
+
+    /** All mappings are being deleted. */
+    public void cleared() {
+        refRepo.deleteAllInBatch();
+        AfterCommit.run(distinctByProject::clear);
+    }
+
+    private static boolean counted(Long projectId, String target) {
+        return projectId != null && target != null && !target.isBlank();
+    }
+
+    private void adjust(Long projectId, int delta) {
+        AfterCommit.run(() -> distinctByProject.compute(projectId, (k, v) -> {
+            int n = (v == null ? 0 : v) + delta;
+            return n > 0 ? n : null;
+        }));
+    }
+}
@@ -0,0 +1,141 @@
+package com.mappingstudio.mapping;
+
+import com.mappingstudio.repository.MappingRepository;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.*;
+
+/**
+ * Mixed create / update / delete of mappings in one transaction. Rows to update or delete are loaded with one
+ * IN query; new rows get pooled sequence ids, so Hibernate sends inserts, updates and deletes as JDBC batches
+ * (hibernate.jdbc.batch_size) at commit instead of one statement and one transaction per row. All rows written
+ * to a project share one change version (see MappingChangeLog).
+ */
+@Service
+public class MappingBatchService {
+
+    /** Operations per request (create + update + delete). */
+    public static final int MAX_OPERATIONS = 5000;
+
+    /**
+     * Request body for POST /api/mappings/batch.
+     * @param create new mappings (any id is ignored)
+     * @param update partial updates, each with "id" plus the fields to change (same fields as PATCH /{id})
+     * @param delete ids to delete
+     */
+    public record Request(List<MappingEntity> create, List<Map<String, Object>> update, List<Long> delete) {}
+
+    private final MappingRepository repo;
+    private final CoverageCounters coverage;
+    private final MappingChangeLog changeLog;
+
+    public MappingBatchService(MappingRepository repo, CoverageCounters coverage, MappingChangeLog changeLog) {
+        this.repo = repo;
+        this.coverage = coverage;
+        this.changeLog = changeLog;
+    }
+
+    /**
+     * Apply all operations or none.
+     * @return { created: [mappings], updated: [mappings], deleted: count }
+     * @throws IllegalArgumentException on a malformed request or an id that does not exist
+     */
+    @Transactional
+    public Map<String, Object> apply(Request request) {
+        List<MappingEntity> create = request.create() != null ? request.create() : List.of();
+        List<Map<String, Object>> update = request.update() != null ? request.update() : List.of();
+        List<Long> delete = request.delete() != null ? request.delete() : List.of();
+        if (create.size() + update.size() + delete.size() > MAX_OPERATIONS)
+            throw new IllegalArgumentException("At most " + MAX_OPERATIONS + " operations per batch");
+
+        Map<Long, Map<String, Object>> patches = new LinkedHashMap<>();
+        for (Map<String, Object> patch : update) {
+            if (patch == null || !(patch.get("id") instanceof Number n))
+                throw new IllegalArgumentException("Every update needs a numeric id");
+            if (patches.put(n.longValue(), patch) != null)
+                throw new IllegalArgumentException("Mapping " + n.longValue() + " is updated twice");
+        }
+        Set<Long> deleteIds = new LinkedHashSet<>();
+        for (Long id : delete) {
+            if (id == null) throw new IllegalArgumentException("Delete ids must not be null");
+            if (patches.containsKey(id)) throw new IllegalArgumentException("Mapping " + id + " is both updated and deleted");
+            deleteIds.add(id);
+        }
+
+        // Persist (id allocation) before any other statement: the pooled id counter is advanced on its own
+        // connection, which SQLite would block behind this transaction's locks
+        for (MappingEntity m : create) {
+            if (m == null) throw new IllegalArgumentException("Create entries must not be null");
+            m.setId(null);
+        }
+        List<MappingEntity> created = repo.saveAll(create);
+
+        Set<Long> ids = new HashSet<>(patches.keySet());
+        ids.addAll(deleteIds);
+        Map<Long, MappingEntity> existing = new HashMap<>();
+        for (MappingEntity m : repo.findAllById(ids)) existing.put(m.getId(), m);
+        for (Long id : ids) {
+            if (!existing.containsKey(id)) throw new IllegalArgumentException("Mapping not found: " + id);
+        }
+
+        CoverageCounters.Batch counters = coverage.batch();
+        for (MappingEntity m : created) {
+            changeLog.stamp(m); // managed: the stamp goes out with the batched insert
+            counters.added(m);
+        }
+
+        List<MappingEntity> updated = new ArrayList<>(patches.size());
+        for (Map.Entry<Long, Map<String, Object>> e : patches.entrySet()) {
+            MappingEntity m = existing.get(e.getKey());
+            CoverageCounters.Ref before = CoverageCounters.Ref.of(m);
+            applyPatch(m, e.getValue());
+            changeLog.stamp(m);
+            counters.changed(before, CoverageCounters.Ref.of(m));
+            updated.add(m); // managed: written by dirty checking at flush
+        }
+
+        List<MappingEntity> removed = new ArrayList<>(deleteIds.size());
+        for (Long id : deleteIds) {
+            MappingEntity m = existing.get(id);
+            counters.removed(m);
+            removed.add(m);
+        }
+        changeLog.deleted(removed);
+        repo.deleteAll(removed);
+
+        // Summary updates are plain JDBC on this transaction's connection and trigger no flush; the pending
+        // entity changes go out as batches at commit
+        counters.apply();
+
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("created", created);
+        out.put("updated", updated);
+        out.put("deleted", removed.size());
+        return out;
+    }
+
+    /** Apply the fields of a PATCH body; editing source or target clears the orphaned flag. */
+    static void applyPatch(MappingEntity entity, Map<String, Object> body) {
+        if (body.containsKey("reviewLater")) {
+            entity.setReviewLater(Boolean.TRUE.equals(body.get("reviewLater")));
+        }
+        if (body.containsKey("source") && body.get("source") != null) {
+            entity.setSource(body.get("source").toString());
+            entity.setOrphaned(null);
+        }
+        if (body.containsKey("target") && body.get("target") != null) {
+            entity.setTarget(body.get("target").toString());
+            entity.setOrphaned(null);
+        }
+        if (body.containsKey("logic") && body.get("logic") != null) {
+            entity.setLogic(body.get("logic").toString());
+        }
+        if (body.containsKey("comments")) {
+            entity.setComments(body.get("comments") == null ? null : body.get("comments").toString());
+        }
+        if (body.containsKey("clientComments")) {
+            entity.setClientComments(body.get("clientComments") == null ? null : body.get("clientComments").toString());
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package com.mappingstudio.mapping;
+
+import com.mappingstudio.repository.MappingTombstoneRepository;
+import com.mappingstudio.repository.ProjectRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.*;
+
+/**
+ * Per-project change versions for delta sync. Each project row holds a counter; a transaction that changes
+ * mappings of a project takes the next value once (all its rows share it) and stamps it on every mapping it
+ * writes, or on a tombstone for every mapping that leaves the project. Version allocation is an UPDATE on the
+ * project row, and SQLite admits one writer at a time, so versions become visible in increasing order.
+ * After commit, each project's changes are pushed as one "mappings" event to its event streams. Tombstones are
+ * kept for the last app.sync.tombstone-window versions of their project; older ones are pruned when the project
+ * next loses a mapping, and a delta from before the window is answered with a reset.
+ */
+@Service
+public class MappingChangeLog {
+
+    private static final String UPSERT_TOMBSTONE =
+        "INSERT INTO mapping_tombstones (mapping_id, project_id, change_version) VALUES (?, ?, ?)"
+            + " ON CONFLICT (mapping_id, project_id) DO UPDATE SET change_version = excluded.change_version";
+    /** Above this many rows an event only says "resync" and clients fetch the delta themselves. */
+    private static final int MAX_EVENT_ROWS = 100;
+
+    private final ProjectRepository projectRepo;
+    private final MappingTombstoneRepository tombstoneRepo;
+    private final JdbcTemplate jdbc;
+    private final ProjectEventHub events;
+    private final long tombstoneWindow;
+
+    public MappingChangeLog(ProjectRepository projectRepo, MappingTombstoneRepository tombstoneRepo, JdbcTemplate jdbc,
+                            ProjectEventHub events, @Value("${app.sync.tombstone-window:10000}") long tombstoneWindow) {
+        this.projectRepo = projectRepo;
+        this.tombstoneRepo = tombstoneRepo;
+        this.jdbc = jdbc;
+        this.events = events;
+        this.tombstoneWindow = Math.max(1, tombstoneWindow);
+    }
+
+    /** Changes of one transaction, per project. */
+    private static final class Pending {
+        final Map<Long, Long> versions = new HashMap<>();
+        final Map<Long, Map<Long, MappingEntity>> changed = new LinkedHashMap<>();
+        final Map<Long, Set<Long>> deleted = new LinkedHashMap<>();
+        final Set<Long> resync = new HashSet<>();
+        final Set<Long> pruned = new HashSet<>();
+    }
+
+    /** Stamp a mapping about to be written with its project's version. */
+    public void stamp(MappingEntity m) {
+        if (m.getProjectId() == null) {
+            m.setChangeVersion(null);
+            return;
+        }
+        Pending p = pending();
+        m.setChangeVersion(version(p, m.getProjectId()));
+        if (m.getId() != null) p.changed.computeIfAbsent(m.getProjectId(), k -> new LinkedHashMap<>()).put(m.getId(), m);
+        else p.resync.add(m.getProjectId());
+    }
+
+    /** Record that these mappings left their project (deleted). */
+    public void deleted(Collection<MappingEntity> mappings) {
+        Pending p = pending();
+        List<Object[]> rows = new ArrayList<>(mappings.size());
+        for (MappingEntity m : mappings) {
+            if (m.getId() == null || m.getProjectId() == null) continue;
+            rows.add(new Object[] { m.getId(), m.getProjectId(), version(p, m.getProjectId()) });
+            p.deleted.computeIfAbsent(m.getProjectId(), k -> new LinkedHashSet<>()).add(m.getId());
+        }
+        if (!rows.isEmpty()) jdbc.batchUpdate(UPSERT_TOMBSTONE, rows);
+        for (Long projectId : p.deleted.keySet()) prune(p, projectId);
+    }
+
+    /** Record that a mapping left oldProjectId (moved to another project by a save). */
+    public void left(Long mappingId, Long oldProjectId) {
+        if (mappingId == null || oldProjectId == null) return;
+        Pending p = pending();
+        jdbc.update(UPSERT_TOMBSTONE, mappingId, oldProjectId, version(p, oldProjectId));
+        p.deleted.computeIfAbsent(oldProjectId, k -> new LinkedHashSet<>()).add(mappingId);
+        prune(p, oldProjectId);
+    }
+
+    /**
+     * Version for rows of the project changed by a bulk update (no entities at hand); subscribers are told
+     * to resync rather than sent the rows.
+     */
+    public long bulkChange(Long projectId) {
+        Pending p = pending();
+        p.resync.add(projectId);
+        return version(p, projectId);
+    }
+
+    /** Current version of the project (0 before its first change; null when the project does not exist). */
+    public Long current(Long projectId) {
+        return projectRepo.findChangeVersion(projectId).map(v -> v != null ? v : 0L).orElse(null);
+    }
+
+    /** True when a delta from since may miss deletions: their tombstones are older than the window and may be pruned. */
+    public boolean expired(long since, long version) {
+        return since < version - tombstoneWindow;
+    }
+
+    /** Ids of mappings that left the project after since, at most max of them. */
+    public List<Long> deletedSince(Long projectId, long since, int max) {
+        return tombstoneRepo.findMappingIdsSince(projectId, since, Limit.of(max));
+    }
+
+    public void projectDeleted(Long projectId) {
+        tombstoneRepo.deleteByProject(projectId);
+        AfterCommit.run(() -> events.close(projectId, "deleted", Map.of("projectId", projectId)));
+    }
+
+    public void cleared() {
+        tombstoneRepo.deleteAllInBatch();
+        AfterCommit.run(() -> events.closeAll("deleted", Map.of("all", true)));
+    }
+
+    /** Drop the project's tombstones that fell out of the window, once per transaction. */
+    private void prune(Pending p, Long projectId) {
+        if (p.pruned.add(projectId)) tombstoneRepo.deleteByProjectUpTo(projectId, version(p, projectId) - tombstoneWindow);
+    }
+
+    private long version(Pending p, Long projectId) {
+        return p.versions.computeIfAbsent(projectId, this::allocate);
+    }
+
+    private long allocate(Long projectId) {
+        projectRepo.incrementChangeVersion(projectId);
+        return projectRepo.findChangeVersion(projectId).map(v -> v != null ? v : 0L).orElse(0L);
+    }
+
+    /** The current transaction's changes; bound on first use and published after commit. */
+    private Pending pending() {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) return new Pending();
+        Pending p = (Pending) TransactionSynchronizationManager.getResource(this);
+        if (p == null) {
+            Pending created = new Pending();
+            TransactionSynchronizationManager.bindResource(this, created);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    publish(created);
+                }
+
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(MappingChangeLog.this);
+                }
+            });
+            p = created;
+        }
+        return p;
+    }
+
+    private void publish(Pending p) {
+        for (Map.Entry<Long, Long> e : p.versions.entrySet()) {
+            Long projectId = e.getKey();
+            Collection<MappingEntity> rows = p.changed.getOrDefault(projectId, Map.of()).values();
+            Set<Long> gone = p.deleted.getOrDefault(projectId, Set.of());
+            Map<String, Object> data = new LinkedHashMap<>();
+            data.put("projectId", projectId);
+            data.put("version", e.getValue());
+            if (p.resync.contains(projectId) || rows.size() + gone.size() > MAX_EVENT_ROWS) {
+                data.put("resync", true);
+            } else {
+                data.put("changed", rows);
+                data.put("deleted", gone);
+            }
+            events.publish(projectId, "mappings", e.getValue(), data);
+        }
+    }
+}
@@ -1,61 +1,200 @@
 package com.mappingstudio.mapping;
 
+import com.mappingstudio.controller.KeysetPage;
 import com.mappingstudio.repository.MappingRepository;
+import org.springframework.data.domain.Limit;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 @RestController
 @RequestMapping("/api/mappings")
 public class MappingController {
 
+    /** Above this many deletions since the client's version, /changes answers with a reset. */
+    private static final int MAX_DELTA_DELETED = 10_000;
+
     private final MappingRepository repo;
+    private final CoverageCounters coverage;
+    private final MappingBatchService batchService;
+    private final MappingChangeLog changeLog;
+    private final MappingProjections projections;
+    private final MappingStreamer streamer;
 
-    public MappingController(MappingRepository repo) {
+    public MappingController(MappingRepository repo, CoverageCounters coverage, MappingBatchService batchService,
+                             MappingChangeLog changeLog, MappingProjections projections, MappingStreamer streamer) {
         this.repo = repo;
+        this.coverage = coverage;
+        this.batchService = batchService;
+        this.changeLog = changeLog;
+        this.projections = projections;
+        this.streamer = streamer;
     }
 
+    @Transactional
     @PostMapping("/save")
     public MappingEntity save(@RequestBody MappingEntity entity) {
-        return repo.save(entity);
+        Long oldProjectId = null;
+        CoverageCounters.Ref before = null;
+        if (entity.getId() != null) {
+            MappingEntity existing = repo.findById(entity.getId()).orElse(null);
+            if (existing != null) {
+                oldProjectId = existing.getProjectId();
+                before = CoverageCounters.Ref.of(existing);
+            }
+        }
+        // Save first: a new row takes its id before this transaction writes anything (see MappingBatchService)
+        MappingEntity saved = repo.save(entity);
+        changeLog.stamp(saved);
+        if (oldProjectId != null && !oldProjectId.equals(saved.getProjectId())) changeLog.left(saved.getId(), oldProjectId);
+        coverage.changed(before, saved);
+        return saved;
+    }
+
+    /**
+     * Create, update and delete many mappings in one request and one transaction (all or nothing).
+     * Body: { create: [mapping], update: [{ id, ...fields }], delete: [id] }; see MappingBatchService.
+     */
+    @PostMapping("/batch")
+    public Map<String, Object> batch(@RequestBody MappingBatchService.Request request) {
+        return batchService.apply(request);
+    }
+
+    /**
+     * All mappings of the project in id order, streamed from a cursor as a JSON array (see MappingStreamer):
+     * the list is never built in memory, so large projects start arriving at once.
+     */
+    @GetMapping(value = "/{project}", params = { "!after", "!limit", "!fields", "!preview" })
+    public ResponseEntity<StreamingResponseBody> loadByName(@PathVariable String project) {
+        return streamed(streamer.byProjectName(project));
     }
 
+    /**
+     * With after/limit, one keyset page { items, limit, nextCursor } in id order. fields (comma-separated, e.g.
+     * source,target,reviewLater) and preview (max chars of logic and comments) return lightweight rows with
+     * just those values; see MappingProjections.
+     */
     @GetMapping("/{project}")
-    public List<MappingEntity> loadByName(@PathVariable String project) {
-        return repo.findByProjectName(project);
+    public ResponseEntity<?> loadPageByName(@PathVariable String project,
+                                            @RequestParam(value = "after", required = false) Long after,
+                                            @RequestParam(value = "limit", required = false) Integer limit,
+                                            @RequestParam(value = "fields", required = false) String fields,
+                                            @RequestParam(value = "preview", required = false) Integer preview) {
+        boolean paged = KeysetPage.requested(after, limit);
+        int n = KeysetPage.limit(limit);
+        if (MappingProjections.requested(fields, preview)) {
+            List<Map<String, Object>> rows = projections.byProjectName(project, MappingProjections.parseFields(fields),
+                preview, after, paged ? n + 1 : null);
+            return ResponseEntity.ok(paged ? KeysetPage.of(rows, n, r -> (Long) r.get("id")) : rows);
+        }
+        List<MappingEntity> rows = repo.findByProjectNameAndIdGreaterThanOrderByIdAsc(
+            project, after != null ? after : 0L, Limit.of(n + 1));
+        return ResponseEntity.ok(KeysetPage.of(rows, n, MappingEntity::getId));
+    }
+
+    /** Same as {@link #loadByName} for a project id. */
+    @GetMapping(value = "/project/{projectId}", params = { "!after", "!limit", "!fields", "!preview" })
+    public ResponseEntity<StreamingResponseBody> loadByProjectId(@PathVariable Long projectId) {
+        return streamed(streamer.byProjectId(projectId));
     }
 
+    /** Same as {@link #loadPageByName} for a project id. */
     @GetMapping("/project/{projectId}")
-    public List<MappingEntity> loadByProjectId(@PathVariable Long projectId) {
-        return repo.findByProjectId(projectId);
+    public ResponseEntity<?> loadPageByProjectId(@PathVariable Long projectId,
+                                                 @RequestParam(value = "after", required = false) Long after,
+                                                 @RequestParam(value = "limit", required = false) Integer limit,
+                                                 @RequestParam(value = "fields", required = false) String fields,
+                                                 @RequestParam(value = "preview", required = false) Integer preview) {
+        boolean paged = KeysetPage.requested(after, limit);
+        int n = KeysetPage.limit(limit);
+        if (MappingProjections.requested(fields, preview)) {
+            List<Map<String, Object>> rows = projections.byProjectId(projectId, MappingProjections.parseFields(fields),
+                preview, after, paged ? n + 1 : null);
+            return ResponseEntity.ok(paged ? KeysetPage.of(rows, n, r -> (Long) r.get("id")) : rows);
+        }
+        List<MappingEntity> rows = repo.findByProjectIdAndIdGreaterThanOrderByIdAsc(
+            projectId, after != null ? after : 0L, Limit.of(n + 1));
+        return ResponseEntity.ok(KeysetPage.of(rows, n, MappingEntity::getId));
+    }
+
+    private static ResponseEntity<StreamingResponseBody> streamed(StreamingResponseBody body) {
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(body);
     }
 
+    /**
+     * Delta sync: mappings of the project written after version since, and ids of mappings that left it.
+     * Returns { version, reset, changed: [mapping], deleted: [id], nextCursor }. changed is one keyset page
+     * (after/limit as for the list endpoints): the client fetches the following pages with the same since and
+     * after = nextCursor until it is null, then polls with since = the version of the first page, which picks
+     * up everything written while it was paging. deleted comes with the first page only; clients apply deleted,
+     * then changed. Without since (or since = 0), when since is ahead of the project (e.g. the id now belongs to
+     * a new project), older than the tombstone window (see MappingChangeLog) or followed by more than
+     * MAX_DELTA_DELETED deletions, reset = true: deleted is empty and changed pages through all mappings.
+     */
+    @Transactional(readOnly = true)
+    @GetMapping("/project/{projectId}/changes")
+    public ResponseEntity<Map<String, Object>> changes(@PathVariable Long projectId,
+                                                       @RequestParam(value = "since", required = false) Long since,
+                                                       @RequestParam(value = "after", required = false) Long after,
+                                                       @RequestParam(value = "limit", required = false) Integer limit) {
+        Long version = changeLog.current(projectId);
+        if (version == null) return ResponseEntity.notFound().build();
+        boolean reset = since == null || since <= 0 || since > version || changeLog.expired(since, version);
+        List<Long> deleted = List.of();
+        if (!reset && after == null) {
+            deleted = changeLog.deletedSince(projectId, since, MAX_DELTA_DELETED + 1);
+            if (deleted.size() > MAX_DELTA_DELETED) {
+                reset = true;
+                deleted = List.of();
+            }
+        }
+        int n = KeysetPage.limit(limit);
+        long from = after != null ? after : 0L;
+        List<MappingEntity> rows = reset
+            ? repo.findByProjectIdAndIdGreaterThanOrderByIdAsc(projectId, from, Limit.of(n + 1))
+            : repo.findByProjectIdAndChangeVersionGreaterThanAndIdGreaterThanOrderByIdAsc(projectId, since, from, Limit.of(n + 1));
+        Map<String, Object> page = KeysetPage.of(rows, n, MappingEntity::getId);
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("version", version);
+        out.put("reset", reset);
+        out.put("changed", page.get("items"));
+        out.put("deleted", deleted);
+        out.put("nextCursor", page.get("nextCursor"));
+        return ResponseEntity.ok(out);
+    }
+
+    @Transactional
     @PatchMapping("/{id}")
-    public MappingEntity update(@PathVariable Long id, @RequestBody java.util.Map<String, Object> body) {
+    public MappingEntity update(@PathVariable Long id, @RequestBody Map<String, Object> body) {
         MappingEntity entity = repo.findById(id).orElseThrow();
-        if (body.containsKey("reviewLater")) {
-            entity.setReviewLater(Boolean.TRUE.equals(body.get("reviewLater")));
-        }
-        if (body.containsKey("source") && body.get("source") != null) {
-            entity.setSource(body.get("source").toString());
-        }
-        if (body.containsKey("target") && body.get("target") != null) {
-            entity.setTarget(body.get("target").toString());
-        }
-        if (body.containsKey("logic") && body.get("logic") != null) {
-            entity.setLogic(body.get("logic").toString());
-        }
-        if (body.containsKey("comments")) {
-            entity.setComments(body.get("comments") == null ? null : body.get("comments").toString());
-        }
-        if (body.containsKey("clientComments")) {
-            entity.setClientComments(body.get("clientComments") == null ? null : body.get("clientComments").toString());
-        }
-        return repo.save(entity);
+        CoverageCounters.Ref before = CoverageCounters.Ref.of(entity);
+        MappingBatchService.applyPatch(entity, body);
+        changeLog.stamp(entity);
+        MappingEntity saved = repo.save(entity);
+        coverage.changed(before, saved);
+        return saved;
     }
 
+    @Transactional
     @DeleteMapping("/{id}")
     public void delete(@PathVariable Long id) {
-        repo.deleteById(id);
+        repo.findById(id).ifPresent(m -> {
+            coverage.removed(m);
+            changeLog.deleted(List.of(m));
+            repo.delete(m);
+        });
+    }
+
+    @ExceptionHandler(IllegalArgumentException.class)
+    public ResponseEntity<Map<String, String>> handleBadRequest(IllegalArgumentException e) {
+        return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+            .body(Map.of("error", "Invalid request", "message", e.getMessage() != null ? e.getMessage() : "Bad request"));
     }
 }
@@ -11,13 +11,23 @@ import lombok.Setter;
         name = "mappings",
         indexes = {
             @Index(name = "idx_project", columnList = "projectName"),
-            @Index(name = "idx_project_id", columnList = "projectId")
+            @Index(name = "idx_project_id", columnList = "projectId"),
+            @Index(name = "idx_mapping_project_target", columnList = "projectId, target"),
+            @Index(name = "idx_mapping_project_version", columnList = "projectId, changeVersion")
         }
 )
 public class MappingEntity {
 
+    public static final int ID_ALLOCATION_SIZE = 50;
+
+    /**
+     * Pooled ids (SQLite has no sequences, so Hibernate keeps the counter in the mappings_seq table): one
+     * counter update per 50 inserts, and inserts no longer need the generated key back, so they are batched.
+     * MappingIdSequenceSeeder moves the counter past ids assigned by the former IDENTITY column.
+     */
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "mappings_seq")
+    @SequenceGenerator(name = "mappings_seq", sequenceName = "mappings_seq", allocationSize = MappingEntity.ID_ALLOCATION_SIZE)
     private Long id;
 
     private Long projectId;
@@ -37,6 +47,15 @@ public class MappingEntity {
 
     private Boolean reviewLater;
 
+    /**
+     * True when a newer version of the project's source or target schema no longer has this mapping's
+     * source/target key (set by SchemaVersionService; cleared when the key comes back or is edited).
+     */
+    private Boolean orphaned;
+
+    /** Project change version of the last write (see MappingChangeLog); null for rows not written since. */
+    private Long changeVersion;
+
     public MappingEntity() {}
 
     public MappingEntity(
@@ -0,0 +1,47 @@
+package com.mappingstudio.mapping;
+
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Keeps the mappings_seq counter (see MappingEntity.id) ahead of the ids already in the mappings table. Rows
+ * created while the id was an IDENTITY column, or by an older build, would otherwise collide with the first
+ * pooled ids. The pooled optimizer reads the counter as the top of the next block, so the block it hands out
+ * is [next_val - allocationSize + 1, next_val]; the counter must be at least max(id) + allocationSize.
+ * Runs at every startup; a no-op when the counter is already ahead.
+ */
+@Component
+public class MappingIdSequenceSeeder {
+
+    private static final Logger log = LoggerFactory.getLogger(MappingIdSequenceSeeder.class);
+
+    private final JdbcTemplate jdbc;
+    private final TransactionTemplate tx;
+
+    public MappingIdSequenceSeeder(JdbcTemplate jdbc, PlatformTransactionManager txManager) {
+        this.jdbc = jdbc;
+        this.tx = new TransactionTemplate(txManager);
+    }
+
+    @PostConstruct
+    public void seed() {
+        tx.executeWithoutResult(s -> {
+            long maxId = jdbc.queryForObject("SELECT COALESCE(MAX(id), 0) FROM mappings", Long.class);
+            long required = maxId + MappingEntity.ID_ALLOCATION_SIZE;
+            Long next = jdbc.query("SELECT next_val FROM mappings_seq", rs -> rs.next() ? rs.getLong(1) : null);
+            if (next == null) {
+                jdbc.update("INSERT INTO mappings_seq (next_val) VALUES (?)", required);
+            } else if (next < required) {
+                jdbc.update("UPDATE mappings_seq SET next_val = ?", required);
+            } else {
+                return;
+            }
+            log.info("Mapping id sequence starts at {}", maxId + 1);
+        });
+    }
+}
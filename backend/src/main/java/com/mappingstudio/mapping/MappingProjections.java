@@ -0,0 +1,111 @@
+package com.mappingstudio.mapping;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.TypedQuery;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.*;
+
+/**
+ * Sparse mapping reads for list endpoints (?fields=source,target&amp;preview=80): only the requested columns are
+ * selected, as scalar rows that never enter the persistence context, and the long text columns (logic,
+ * comments, clientComments) can be cut to a preview length in SQL. Rows come back as field → value maps in id
+ * order, always including id.
+ */
+@Service
+public class MappingProjections {
+
+    /** Longest preview that can be requested; the full column is at most 5000 chars anyway. */
+    public static final int MAX_PREVIEW = 5000;
+
+    /** Selectable fields (JSON names of MappingEntity) and their JPQL paths. */
+    private static final Map<String, String> FIELDS = new LinkedHashMap<>();
+    static {
+        FIELDS.put("id", "m.id");
+        FIELDS.put("projectId", "m.projectId");
+        FIELDS.put("projectName", "m.projectName");
+        FIELDS.put("source", "m.source");
+        FIELDS.put("target", "m.target");
+        FIELDS.put("logic", "m.logic");
+        FIELDS.put("comments", "m.comments");
+        FIELDS.put("clientComments", "m.clientComments");
+        FIELDS.put("reviewLater", "m.reviewLater");
+        FIELDS.put("orphaned", "m.orphaned");
+        FIELDS.put("changeVersion", "m.changeVersion");
+    }
+    private static final Set<String> TEXT_FIELDS = Set.of("logic", "comments", "clientComments");
+
+    private final EntityManager em;
+
+    public MappingProjections(EntityManager em) {
+        this.em = em;
+    }
+
+    /** True when the request asked for a projection rather than full entities. */
+    public static boolean requested(String fields, Integer preview) {
+        return (fields != null && !fields.isBlank()) || preview != null;
+    }
+
+    /**
+     * Parse a comma-separated field list; blank means every field. id is always included first.
+     * @throws IllegalArgumentException for an unknown field
+     */
+    public static List<String> parseFields(String fields) {
+        if (fields == null || fields.isBlank()) return List.copyOf(FIELDS.keySet());
+        LinkedHashSet<String> out = new LinkedHashSet<>();
+        out.add("id");
+        for (String f : fields.split(",")) {
+            String name = f.trim();
+            if (name.isEmpty()) continue;
+            if (!FIELDS.containsKey(name))
+                throw new IllegalArgumentException("Unknown field: " + name + " (allowed: " + String.join(", ", FIELDS.keySet()) + ")");
+            out.add(name);
+        }
+        return List.copyOf(out);
+    }
+
+    /**
+     * Mappings of a project (by id) with only the given fields.
+     * @param preview max chars of logic / comments / clientComments, or null for full text
+     * @param after keyset cursor (rows with a greater id), or null
+     * @param maxRows row limit, or null for all
+     */
+    @Transactional(readOnly = true)
+    public List<Map<String, Object>> byProjectId(Long projectId, List<String> fields, Integer preview, Long after, Integer maxRows) {
+        return select(fields, preview, "m.projectId = :owner", projectId, after, maxRows);
+    }
+
+    /** Same as {@link #byProjectId} for mappings saved by project name. */
+    @Transactional(readOnly = true)
+    public List<Map<String, Object>> byProjectName(String projectName, List<String> fields, Integer preview, Long after, Integer maxRows) {
+        return select(fields, preview, "m.projectName = :owner", projectName, after, maxRows);
+    }
+
+    private List<Map<String, Object>> select(List<String> fields, Integer preview, String ownerClause, Object owner,
+                                             Long after, Integer maxRows) {
+        int cut = preview != null ? Math.min(Math.max(1, preview), MAX_PREVIEW) : 0;
+        StringBuilder jpql = new StringBuilder("select ");
+        for (int i = 0; i < fields.size(); i++) {
+            String f = fields.get(i);
+            if (i > 0) jpql.append(", ");
+            if (cut > 0 && TEXT_FIELDS.contains(f)) jpql.append("substring(").append(FIELDS.get(f)).append(", 1, ").append(cut).append(')');
+            else jpql.append(FIELDS.get(f));
+        }
+        jpql.append(" from MappingEntity m where ").append(ownerClause);
+        if (after != null) jpql.append(" and m.id > :after");
+        jpql.append(" order by m.id");
+
+        TypedQuery<Object[]> q = em.createQuery(jpql.toString(), Object[].class).setParameter("owner", owner);
+        if (after != null) q.setParameter("after", after);
+        if (maxRows != null) q.setMaxResults(maxRows);
+        List<Object[]> rows = q.getResultList();
+        List<Map<String, Object>> out = new ArrayList<>(rows.size());
+        for (Object[] row : rows) {
+            Map<String, Object> m = new LinkedHashMap<>(fields.size() * 2);
+            for (int i = 0; i < fields.size(); i++) m.put(fields.get(i), row[i]);
+            out.add(m);
+        }
+        return out;
+    }
+}
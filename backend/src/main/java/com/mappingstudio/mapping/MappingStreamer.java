@@ -0,0 +1,66 @@
+package com.mappingstudio.mapping;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mappingstudio.repository.MappingRepository;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.function.BiFunction;
+
+/**
+ * Writes all mappings of a project as a JSON array in id order, one keyset chunk at a time: each chunk is read
+ * in its own short read-only transaction and serialized after it has ended, so memory stays at one chunk
+ * regardless of project size, and no connection or WAL snapshot is held while a slow client reads the body
+ * (a long-lived reader would keep SQLite from checkpointing the WAL). The list is consistent per chunk, not
+ * across the whole body; clients that need a point-in-time view use /changes. The body is written after the
+ * controller returns, so the transactions are opened here rather than by {@code @Transactional}.
+ */
+@Service
+public class MappingStreamer {
+
+    /** Rows per read transaction; the body is flushed after each chunk so a slow client sees progress. */
+    private static final int CHUNK = 500;
+
+    private final MappingRepository repo;
+    private final ObjectMapper mapper;
+    private final TransactionTemplate readTx;
+
+    public MappingStreamer(MappingRepository repo, ObjectMapper mapper, PlatformTransactionManager txManager) {
+        this.repo = repo;
+        this.mapper = mapper;
+        this.readTx = new TransactionTemplate(txManager);
+        readTx.setReadOnly(true);
+    }
+
+    public StreamingResponseBody byProjectId(Long projectId) {
+        return out -> write(out, (after, limit) -> repo.findByProjectIdAndIdGreaterThanOrderByIdAsc(projectId, after, limit));
+    }
+
+    public StreamingResponseBody byProjectName(String projectName) {
+        return out -> write(out, (after, limit) -> repo.findByProjectNameAndIdGreaterThanOrderByIdAsc(projectName, after, limit));
+    }
+
+    private void write(OutputStream out, BiFunction<Long, Limit, List<MappingEntity>> page) throws IOException {
+        try (JsonGenerator gen = mapper.getFactory().createGenerator(out)) {
+            gen.writeStartArray();
+            long after = 0L;
+            List<MappingEntity> chunk;
+            do {
+                long from = after;
+                // Entities are detached once the transaction ends; serialization needs no connection
+                chunk = readTx.execute(status -> page.apply(from, Limit.of(CHUNK)));
+                for (MappingEntity m : chunk) gen.writeObject(m);
+                gen.flush();
+                if (!chunk.isEmpty()) after = chunk.get(chunk.size() - 1).getId();
+            } while (chunk.size() == CHUNK);
+            gen.writeEndArray();
+        }
+    }
+}
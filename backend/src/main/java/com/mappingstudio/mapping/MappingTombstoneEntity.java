@@ -0,0 +1,58 @@
+package com.mappingstudio.mapping;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.io.Serializable;
+import java.util.Objects;
+
+/**
+ * Marks a mapping that left a project (deleted, or moved to another project) at a project change version,
+ * so delta sync clients (GET /api/mappings/project/{id}/changes) can drop it. Removed with the project.
+ */
+@Getter
+@Setter
+@Entity
+@IdClass(MappingTombstoneEntity.Key.class)
+@Table(
+        name = "mapping_tombstones",
+        indexes = @Index(name = "idx_tombstone_project_version", columnList = "project_id, change_version")
+)
+public class MappingTombstoneEntity {
+
+    @Id
+    @Column(name = "mapping_id")
+    private Long mappingId;
+
+    @Id
+    @Column(name = "project_id")
+    private Long projectId;
+
+    @Column(name = "change_version", nullable = false)
+    private long changeVersion;
+
+    public static class Key implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private Long mappingId;
+        private Long projectId;
+
+        public Key() {}
+
+        public Key(Long mappingId, Long projectId) {
+            this.mappingId = mappingId;
+            this.projectId = projectId;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key k && Objects.equals(mappingId, k.mappingId) && Objects.equals(projectId, k.projectId);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(mappingId, projectId);
+        }
+    }
+}
@@ -0,0 +1,205 @@
+package com.mappingstudio.mapping;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * In-process fan-out of project change events to server-sent event streams (GET /api/projects/{id}/events).
+ * An event is serialized once and queued to every subscriber of the project; each subscriber has a bounded
+ * buffer drained by a small sender pool, so publishers never wait on a socket. A subscriber whose buffer is
+ * full (a stalled or very slow tab) is disconnected; EventSource reconnects and the client catches up with
+ * GET /api/mappings/project/{id}/changes?since=&lt;last event id&gt;.
+ */
+@Service
+public class ProjectEventHub {
+
+    private static final Logger log = LoggerFactory.getLogger(ProjectEventHub.class);
+
+    /** One serialized event; name null = heartbeat comment. */
+    private record Event(String name, String id, String json) {}
+
+    private static final Event HEARTBEAT = new Event(null, null, null);
+
+    private final ObjectMapper mapper;
+    private final int bufferSize;
+    private final int maxSubscribers;
+    private final long timeoutMillis;
+    private final Map<Long, Set<Subscriber>> byProject = new ConcurrentHashMap<>();
+    private final AtomicInteger subscribers = new AtomicInteger();
+    private final ThreadPoolExecutor senders;
+    private final ScheduledExecutorService heartbeat;
+
+    public ProjectEventHub(ObjectMapper mapper,
+                           @Value("${app.events.subscriber-buffer:256}") int bufferSize,
+                           @Value("${app.events.max-subscribers:1000}") int maxSubscribers,
+                           @Value("${app.events.sender-threads:4}") int senderThreads,
+                           @Value("${app.events.timeout-minutes:30}") long timeoutMinutes,
+                           @Value("${app.events.heartbeat-seconds:25}") long heartbeatSeconds) {
+        this.mapper = mapper;
+        this.bufferSize = Math.max(8, bufferSize);
+        this.maxSubscribers = Math.max(1, maxSubscribers);
+        this.timeoutMillis = TimeUnit.MINUTES.toMillis(Math.max(1, timeoutMinutes));
+        int threads = Math.max(1, senderThreads);
+        AtomicInteger seq = new AtomicInteger();
+        // Unbounded queue is fine: each subscriber has at most one drain task queued at a time
+        this.senders = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(),
+            r -> daemon(r, "project-events-" + seq.incrementAndGet()));
+        this.heartbeat = Executors.newSingleThreadScheduledExecutor(r -> daemon(r, "project-events-heartbeat"));
+        long period = Math.max(5, heartbeatSeconds);
+        heartbeat.scheduleAtFixedRate(this::sendHeartbeats, period, period, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Open a stream for the project. The first event is "ready" with the project's current change version.
+     * @throws RejectedExecutionException when app.events.max-subscribers streams are already open
+     */
+    public SseEmitter subscribe(Long projectId, long version) {
+        if (subscribers.incrementAndGet() > maxSubscribers) {
+            subscribers.decrementAndGet();
+            throw new RejectedExecutionException("Too many event streams");
+        }
+        Subscriber s = new Subscriber(projectId, new SseEmitter(timeoutMillis));
+        s.emitter.onCompletion(s::remove);
+        s.emitter.onTimeout(s::remove);
+        s.emitter.onError(e -> s.remove());
+        byProject.computeIfAbsent(projectId, k -> ConcurrentHashMap.newKeySet()).add(s);
+        s.offer(event("ready", String.valueOf(version), Map.of("projectId", projectId, "version", version)));
+        return s.emitter;
+    }
+
+    /** Push an event to every stream of the project. id becomes the SSE event id (the change version). */
+    public void publish(Long projectId, String name, Long id, Object data) {
+        Set<Subscriber> subs = byProject.get(projectId);
+        if (subs == null || subs.isEmpty()) return;
+        Event e = event(name, id != null ? id.toString() : null, data);
+        if (e == null) return;
+        for (Subscriber s : subs) s.offer(e);
+    }
+
+    /** Send a last event and end every stream of the project (e.g. the project was deleted). */
+    public void close(Long projectId, String name, Object data) {
+        Set<Subscriber> subs = byProject.remove(projectId);
+        if (subs == null) return;
+        Event e = event(name, null, data);
+        for (Subscriber s : subs) {
+            if (e != null) s.offer(e);
+            s.completeAfterDrain();
+        }
+    }
+
+    public void closeAll(String name, Object data) {
+        for (Long projectId : Set.copyOf(byProject.keySet())) close(projectId, name, data);
+    }
+
+    private Event event(String name, String id, Object data) {
+        try {
+            return new Event(name, id, mapper.writeValueAsString(data));
+        } catch (JsonProcessingException ex) {
+            log.warn("Could not serialize {} event", name, ex);
+            return null;
+        }
+    }
+
+    private void sendHeartbeats() {
+        for (Set<Subscriber> subs : byProject.values()) {
+            for (Subscriber s : subs) s.offer(HEARTBEAT);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        heartbeat.shutdownNow();
+        senders.shutdownNow();
+    }
+
+    private static Thread daemon(Runnable r, String name) {
+        Thread t = new Thread(r, name);
+        t.setDaemon(true);
+        return t;
+    }
+
+    private final class Subscriber {
+        final Long projectId;
+        final SseEmitter emitter;
+        final BlockingQueue<Event> buffer = new ArrayBlockingQueue<>(bufferSize);
+        final AtomicBoolean draining = new AtomicBoolean();
+        final AtomicBoolean removed = new AtomicBoolean();
+        volatile boolean completeWhenDrained;
+
+        Subscriber(Long projectId, SseEmitter emitter) {
+            this.projectId = projectId;
+            this.emitter = emitter;
+        }
+
+        void offer(Event e) {
+            if (removed.get()) return;
+            if (!buffer.offer(e)) {
+                log.info("Disconnecting slow event stream for project {}", projectId);
+                remove();
+                emitter.complete();
+                return;
+            }
+            scheduleDrain();
+        }
+
+        void completeAfterDrain() {
+            completeWhenDrained = true;
+            scheduleDrain();
+        }
+
+        private void scheduleDrain() {
+            if (!draining.compareAndSet(false, true)) return;
+            try {
+                senders.execute(this::drain);
+            } catch (RejectedExecutionException ex) {
+                draining.set(false);
+            }
+        }
+
+        private void drain() {
+            try {
+                Event e;
+                while ((e = buffer.poll()) != null) {
+                    if (e.name() == null) emitter.send(SseEmitter.event().comment("ping"));
+                    else {
+                        SseEmitter.SseEventBuilder b = SseEmitter.event().name(e.name()).data(e.json());
+                        if (e.id() != null) b.id(e.id());
+                        emitter.send(b);
+                    }
+                }
+                if (completeWhenDrained) {
+                    remove();
+                    emitter.complete();
+                }
+            } catch (IOException | IllegalStateException ex) {
+                // Client went away (or the emitter already completed)
+                remove();
+                return;
+            } finally {
+                draining.set(false);
+            }
+            if (!buffer.isEmpty()) scheduleDrain();
+        }
+
+        void remove() {
+            if (!removed.compareAndSet(false, true)) return;
+            subscribers.decrementAndGet();
+            Set<Subscriber> subs = byProject.get(projectId);
+            if (subs != null) subs.remove(this);
+            buffer.clear();
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.mappingstudio.mapping;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.io.Serializable;
+import java.util.Objects;
+
+/**
+ * Number of mappings of a project that point at a target key. Rows exist only while the count is positive,
+ * so the number of rows per project is its distinct mapped target count (see CoverageCounters).
+ */
+@Getter
+@Setter
+@Entity
+@IdClass(ProjectTargetRefEntity.Key.class)
+@Table(name = "project_target_refs")
+public class ProjectTargetRefEntity {
+
+    @Id
+    @Column(name = "project_id")
+    private Long projectId;
+
+    @Id
+    @Column(name = "target")
+    private String target;
+
+    @Column(name = "ref_count", nullable = false)
+    private int refCount;
+
+    public static class Key implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private Long projectId;
+        private String target;
+
+        public Key() {}
+
+        public Key(Long projectId, String target) {
+            this.projectId = projectId;
+            this.target = target;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key k && Objects.equals(projectId, k.projectId) && Objects.equals(target, k.target);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(projectId, target);
+        }
+    }
+}
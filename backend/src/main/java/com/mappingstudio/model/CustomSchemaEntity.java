@@ -5,10 +5,12 @@ import java.time.Instant;
 
 /**
  * Uploaded (non-EDI) schema: JSON sample, XSD, CSV sample, or Excel spec.
- * Stores display name, type, and generated tree JSON for the mapping UI.
+ * Stores display name, type, and the generated tree in compact binary form (see CompactSchemaTree).
+ * treeJson is only set on rows created before the binary format; they are converted at startup.
+ * Uploads with the same content hash share one tree: only the first (canonical) row stores treeBin.
  */
 @Entity
-@Table(name = "custom_schemas")
+@Table(name = "custom_schemas", indexes = @Index(name = "idx_custom_schema_hash", columnList = "content_hash"))
 public class CustomSchemaEntity {
 
     @Id
@@ -22,9 +24,36 @@ public class CustomSchemaEntity {
     @Column(nullable = false, length = 32)
     private String type;
 
-    @Column(columnDefinition = "TEXT", nullable = false)
+    /** Legacy JSON tree; null for rows stored in binary form. */
+    @Column(columnDefinition = "TEXT")
     private String treeJson;
 
+    /** CompactSchemaTree.toBytes() */
+    @Column(name = "tree_bin", columnDefinition = "BLOB")
+    private byte[] treeBin;
+
+    /** SHA-256 (hex) of type + normalized upload bytes; null for rows uploaded before deduplication. */
+    @Column(name = "content_hash", length = 64)
+    private String contentHash;
+
+    /** Tree statistics, computed once at upload (or backfilled at startup) so coverage never loads the tree. */
+    @Column(name = "leaf_count")
+    private Integer leafCount;
+
+    @Column(name = "node_count")
+    private Integer nodeCount;
+
+    @Column(name = "max_depth")
+    private Integer maxDepth;
+
+    /** CompactSchemaTree.keyFingerprint(): hash of the sorted leaf key set. */
+    @Column(name = "key_fingerprint", length = 64)
+    private String keyFingerprint;
+
+    /** Id of the upload this one replaced (latest earlier row with the same name), for version diffs. */
+    @Column(name = "previous_version_id")
+    private Long previousVersionId;
+
     private Instant createdAt;
 
     @PrePersist
@@ -40,6 +69,20 @@ public class CustomSchemaEntity {
     public void setType(String type) { this.type = type; }
     public String getTreeJson() { return treeJson; }
     public void setTreeJson(String treeJson) { this.treeJson = treeJson; }
+    public byte[] getTreeBin() { return treeBin; }
+    public void setTreeBin(byte[] treeBin) { this.treeBin = treeBin; }
+    public String getContentHash() { return contentHash; }
+    public void setContentHash(String contentHash) { this.contentHash = contentHash; }
+    public Integer getLeafCount() { return leafCount; }
+    public void setLeafCount(Integer leafCount) { this.leafCount = leafCount; }
+    public Integer getNodeCount() { return nodeCount; }
+    public void setNodeCount(Integer nodeCount) { this.nodeCount = nodeCount; }
+    public Integer getMaxDepth() { return maxDepth; }
+    public void setMaxDepth(Integer maxDepth) { this.maxDepth = maxDepth; }
+    public String getKeyFingerprint() { return keyFingerprint; }
+    public void setKeyFingerprint(String keyFingerprint) { this.keyFingerprint = keyFingerprint; }
+    public Long getPreviousVersionId() { return previousVersionId; }
+    public void setPreviousVersionId(Long previousVersionId) { this.previousVersionId = previousVersionId; }
     public Instant getCreatedAt() { return createdAt; }
     public void setCreatedAt(Instant createdAt) { this.createdAt = createdAt; }
 }
@@ -20,6 +20,13 @@ public class ProjectEntity {
     private String status;
     private String updated;
 
+    /**
+     * Latest mapping change version of the project (see MappingChangeLog). Only ever written by the version
+     * UPDATE, never by saving the entity, so a stale copy cannot move it backwards.
+     */
+    @Column(name = "change_version", insertable = false, updatable = false)
+    private Long changeVersion;
+
     /** Computed when listing projects: % of target schema elements that have at least one mapping. Not persisted. */
     @Transient
     private Integer coverage;
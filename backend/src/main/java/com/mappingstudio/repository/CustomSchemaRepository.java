@@ -2,15 +2,31 @@ package com.mappingstudio.repository;
 
 import com.mappingstudio.model.CustomSchemaEntity;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
 import java.util.Optional;
 
+@Transactional(readOnly = true)
 public interface CustomSchemaRepository extends JpaRepository<CustomSchemaEntity, Long> {
 
     List<CustomSchemaEntity> findAllByOrderByCreatedAtDesc();
 
     Optional<CustomSchemaEntity> findById(Long id);
 
-    Optional<CustomSchemaEntity> findByName(String name);
+    /** Latest upload with this display name (names are not unique). */
+    Optional<CustomSchemaEntity> findFirstByNameOrderByIdDesc(String name);
+
+    /** Canonical row for a content hash: the oldest one that stores the tree. */
+    Optional<CustomSchemaEntity> findFirstByContentHashAndTreeBinIsNotNullOrderByIdAsc(String contentHash);
+
+    /** [id, name, leafCount] for every row, oldest first; reads no tree data. */
+    @Query("select c.id, c.name, c.leafCount from CustomSchemaEntity c order by c.id asc")
+    List<Object[]> findLeafCounts();
+
+    /** Stored leaf counts of the uploads with this name, latest first (null where not yet computed). */
+    @Query("select c.leafCount from CustomSchemaEntity c where c.name = :name order by c.id desc")
+    List<Integer> findLeafCountsByName(@Param("name") String name);
 }
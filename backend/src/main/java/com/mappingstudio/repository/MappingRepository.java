@@ -1,13 +1,104 @@
 package com.mappingstudio.repository;
 
+import com.mappingstudio.export.MappingExportRow;
 import com.mappingstudio.mapping.MappingEntity;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Collection;
 import java.util.List;
 
+@Transactional(readOnly = true)
 public interface MappingRepository
         extends JpaRepository<MappingEntity, Long> {
 
-    List<MappingEntity> findByProjectName(String projectName);
     List<MappingEntity> findByProjectId(Long projectId);
+
+    @Transactional
     void deleteByProjectId(Long projectId);
+
+    /*
+     * Keyset pages in id order. idx_project_id / idx_project already serve (projectId, id) and (projectName, id):
+     * id is the SQLite rowid, which every index carries as its last column, so each page is one index range scan.
+     * Rows are loaded read-only (no snapshots for dirty checking). MappingStreamer writes whole projects from
+     * these pages too, one short read transaction per chunk.
+     */
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true"))
+    List<MappingEntity> findByProjectIdAndIdGreaterThanOrderByIdAsc(Long projectId, Long after, Limit limit);
+
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true"))
+    List<MappingEntity> findByProjectNameAndIdGreaterThanOrderByIdAsc(String projectName, Long after, Limit limit);
+
+    /** Export columns only, as DTOs (no managed entities, no dirty checking). */
+    @Query("select new com.mappingstudio.export.MappingExportRow(m.source, m.logic, m.target, m.comments, m.clientComments,"
+        + " m.reviewLater) from MappingEntity m where m.projectId = :projectId order by m.id")
+    List<MappingExportRow> findExportRowsByProjectId(@Param("projectId") Long projectId);
+
+    @Query("select new com.mappingstudio.export.MappingExportRow(m.source, m.logic, m.target, m.comments, m.clientComments,"
+        + " m.reviewLater) from MappingEntity m where m.projectName = :projectName order by m.id")
+    List<MappingExportRow> findExportRowsByProjectName(@Param("projectName") String projectName);
+
+    /**
+     * Keyset page (in id order) of the mappings written after a project change version; the version range comes
+     * from idx_mapping_project_version, so only the delta is sorted.
+     */
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true"))
+    List<MappingEntity> findByProjectIdAndChangeVersionGreaterThanAndIdGreaterThanOrderByIdAsc(
+        Long projectId, Long since, Long after, Limit limit);
+
+    /** Flag (or clear) mappings of the project whose target is one of keys; changed rows get the change version. */
+    @Modifying
+    @Transactional
+    @Query("update MappingEntity m set m.orphaned = :orphaned, m.changeVersion = :version where m.projectId = :projectId"
+        + " and m.target in :keys and coalesce(m.orphaned, false) <> :orphaned")
+    int markTargetOrphaned(@Param("projectId") Long projectId, @Param("keys") Collection<String> keys,
+                           @Param("orphaned") Boolean orphaned, @Param("version") long version);
+
+    /** Flag (or clear) mappings of the project whose source is one of keys; changed rows get the change version. */
+    @Modifying
+    @Transactional
+    @Query("update MappingEntity m set m.orphaned = :orphaned, m.changeVersion = :version where m.projectId = :projectId"
+        + " and m.source in :keys and coalesce(m.orphaned, false) <> :orphaned")
+    int markSourceOrphaned(@Param("projectId") Long projectId, @Param("keys") Collection<String> keys,
+                           @Param("orphaned") Boolean orphaned, @Param("version") long version);
+
+    /** [target, count] of the project's mappings with target in keys whose flag markTargetOrphaned would change. */
+    @Query("select m.target, count(m) from MappingEntity m where m.projectId = :projectId and m.target in :keys"
+        + " and coalesce(m.orphaned, false) <> :orphaned group by m.target")
+    List<Object[]> countTargetFlagChanges(@Param("projectId") Long projectId, @Param("keys") Collection<String> keys,
+                                          @Param("orphaned") Boolean orphaned);
+
+    /** [target, count] of the project's mappings with source in keys whose flag markSourceOrphaned would change. */
+    @Query("select m.target, count(m) from MappingEntity m where m.projectId = :projectId and m.source in :keys"
+        + " and coalesce(m.orphaned, false) <> :orphaned group by m.target")
+    List<Object[]> countSourceFlagChanges(@Param("projectId") Long projectId, @Param("keys") Collection<String> keys,
+                                          @Param("orphaned") Boolean orphaned);
+
+    /** [projectId, count] of orphaned mappings per project. */
+    @Query("select m.projectId, count(m) from MappingEntity m where m.projectId in :projectIds and m.orphaned = true group by m.projectId")
+    List<Object[]> countOrphanedByProject(@Param("projectIds") Collection<Long> projectIds);
+
+    /**
+     * SQL condition for a target that counts toward coverage, matching {@code !target.isBlank()} in
+     * CoverageCounters: SQLite's one-argument trim() only strips spaces, so tabs and line breaks are listed.
+     */
+    String TARGET_NOT_BLANK = "trim(target, ' ' || char(9, 10, 11, 12, 13)) <> ''";
+
+    /** SQL condition for a mapping not flagged orphaned (booleans are stored as 0/1, unset as null). */
+    String NOT_ORPHANED = "coalesce(orphaned, 0) = 0";
+
+    /**
+     * Mappings that count toward coverage (project and non-blank target set, not orphaned); checked against
+     * CoverageCounters at startup.
+     */
+    @Query(value = "select count(*) from mappings where project_id is not null and target is not null and " + TARGET_NOT_BLANK
+           + " and " + NOT_ORPHANED, nativeQuery = true)
+    long countTargetReferences();
 }
@@ -0,0 +1,32 @@
+package com.mappingstudio.repository;
+
+import com.mappingstudio.mapping.MappingTombstoneEntity;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+
+@Transactional(readOnly = true)
+public interface MappingTombstoneRepository
+        extends JpaRepository<MappingTombstoneEntity, MappingTombstoneEntity.Key> {
+
+    /** Ids of mappings that left the project after the given version (idx_tombstone_project_version range scan). */
+    @Query("select t.mappingId from MappingTombstoneEntity t where t.projectId = :projectId and t.changeVersion > :since"
+        + " order by t.changeVersion, t.mappingId")
+    List<Long> findMappingIdsSince(@Param("projectId") Long projectId, @Param("since") long since, Limit limit);
+
+    /** Drop the project's tombstones at or below a version (delta sync from there on answers with a reset). */
+    @Modifying
+    @Transactional
+    @Query("delete from MappingTombstoneEntity t where t.projectId = :projectId and t.changeVersion <= :upTo")
+    int deleteByProjectUpTo(@Param("projectId") Long projectId, @Param("upTo") long upTo);
+
+    @Modifying
+    @Transactional
+    @Query("delete from MappingTombstoneEntity t where t.projectId = :projectId")
+    int deleteByProject(@Param("projectId") Long projectId);
+}
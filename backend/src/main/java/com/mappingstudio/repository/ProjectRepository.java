@@ -1,11 +1,34 @@
 package com.mappingstudio.repository;
 
 import com.mappingstudio.model.ProjectEntity;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
+import java.util.Optional;
 
+@Transactional(readOnly = true)
 public interface ProjectRepository extends JpaRepository<ProjectEntity, Long> {
 
     List<ProjectEntity> findAllByOrderByIdDesc();
+
+    /** Keyset page, newest first: projects with id below the cursor (primary key range scan). */
+    List<ProjectEntity> findByIdLessThanOrderByIdDesc(Long after, Limit limit);
+
+    List<ProjectEntity> findByTargetSchema(String targetSchema);
+
+    List<ProjectEntity> findBySourceSchema(String sourceSchema);
+
+    /** Take the next change version of the project (see MappingChangeLog); native so it never goes through a loaded entity. */
+    @Modifying
+    @Transactional
+    @Query(value = "UPDATE projects SET change_version = COALESCE(change_version, 0) + 1 WHERE id = :id", nativeQuery = true)
+    int incrementChangeVersion(@Param("id") Long id);
+
+    @Query("select p.changeVersion from ProjectEntity p where p.id = :id")
+    Optional<Long> findChangeVersion(@Param("id") Long id);
 }
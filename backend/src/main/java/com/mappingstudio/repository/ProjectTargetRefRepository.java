@@ -0,0 +1,27 @@
+package com.mappingstudio.repository;
+
+import com.mappingstudio.mapping.ProjectTargetRefEntity;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+
+@Transactional(readOnly = true)
+public interface ProjectTargetRefRepository
+        extends JpaRepository<ProjectTargetRefEntity, ProjectTargetRefEntity.Key> {
+
+    @Modifying
+    @Transactional
+    @Query("delete from ProjectTargetRefEntity r where r.projectId = :projectId")
+    int deleteByProject(@Param("projectId") Long projectId);
+
+    /** [projectId, distinct targets] per project. */
+    @Query("select r.projectId, count(r) from ProjectTargetRefEntity r group by r.projectId")
+    List<Object[]> countByProject();
+
+    @Query("select coalesce(sum(r.refCount), 0) from ProjectTargetRefEntity r")
+    long totalRefs();
+}
@@ -0,0 +1,482 @@
+package com.mappingstudio.schema;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Flattened, immutable schema tree. Nodes are stored breadth-first in parallel int arrays so that
+ * the children of every node form one contiguous range; key, title and data type are indexes into a
+ * shared, de-duplicated string table, and leaf flags live in a BitSet. Top-level nodes are [0, rootCount).
+ * <p>
+ * Serializes to the same JSON the UI has always received (title, key, dataType?, children?, isLeaf);
+ * {@link #toBytes()} / {@link #fromBytes(byte[])} are the persistence format for custom schemas.
+ */
+@JsonSerialize(using = CompactSchemaTree.JsonWriter.class)
+public final class CompactSchemaTree {
+
+    private static final int MAGIC = 0x4D535431; // "MST1"
+    private static final int FORMAT_VERSION = 1;
+
+    private final String[] strings;
+    private final int[] parent;
+    private final int[] keyRef;
+    private final int[] titleRef;
+    /** -1 when the node has no data type. */
+    private final int[] typeRef;
+    private final int[] childStart;
+    private final int[] childCount;
+    private final BitSet leaf;
+    private final int rootCount;
+    private final int leafCount;
+    private final int maxDepth;
+    /** Node indexes sorted by key, for binary-search key lookup. */
+    private final int[] byKey;
+
+    private CompactSchemaTree(String[] strings, int[] parent, int[] keyRef, int[] titleRef, int[] typeRef, BitSet leaf) {
+        this.strings = strings;
+        this.parent = parent;
+        this.keyRef = keyRef;
+        this.titleRef = titleRef;
+        this.typeRef = typeRef;
+        this.leaf = leaf;
+        int n = parent.length;
+        this.childStart = new int[n];
+        this.childCount = new int[n];
+        int roots = 0, depthMax = 0;
+        int[] depth = new int[n];
+        for (int i = 0; i < n; i++) {
+            int p = parent[i];
+            if (p < 0) {
+                roots++;
+                depth[i] = 1;
+            } else {
+                if (childCount[p]++ == 0) childStart[p] = i;
+                depth[i] = depth[p] + 1;
+            }
+            if (depth[i] > depthMax) depthMax = depth[i];
+        }
+        this.rootCount = roots;
+        this.maxDepth = depthMax;
+        this.leafCount = leaf.cardinality();
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++) order[i] = i;
+        Arrays.sort(order, Comparator.comparing((Integer i) -> strings[keyRef[i]]).thenComparingInt(i -> i));
+        this.byKey = new int[n];
+        for (int i = 0; i < n; i++) byKey[i] = order[i];
+    }
+
+    public int size() { return parent.length; }
+    public int rootCount() { return rootCount; }
+    public int leafCount() { return leafCount; }
+    public int maxDepth() { return maxDepth; }
+
+    public String key(int node) { return strings[keyRef[node]]; }
+    public String title(int node) { return strings[titleRef[node]]; }
+    public String dataType(int node) { return typeRef[node] < 0 ? null : strings[typeRef[node]]; }
+    public boolean isLeaf(int node) { return leaf.get(node); }
+    public int parent(int node) { return parent[node]; }
+    public int childStart(int node) { return childStart[node]; }
+    public int childCount(int node) { return childCount[node]; }
+
+    /** First node (in tree order) with this key, or -1. O(log n) over the sorted key index. */
+    public int indexOf(String key) {
+        if (key == null) return -1;
+        int lo = 0, hi = byKey.length - 1;
+        int found = -1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int cmp = strings[keyRef[byKey[mid]]].compareTo(key);
+            if (cmp < 0) lo = mid + 1;
+            else {
+                if (cmp == 0) found = byKey[mid];
+                hi = mid - 1;
+            }
+        }
+        return found;
+    }
+
+    public boolean containsKey(String key) {
+        return indexOf(key) >= 0;
+    }
+
+    /**
+     * SHA-256 (hex) of the sorted, distinct leaf keys: equal for two trees exactly when they offer the same
+     * mappable keys, whatever their titles, types or grouping.
+     */
+    public String keyFingerprint() {
+        MessageDigest md;
+        try {
+            md = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        String prev = null;
+        for (int node : byKey) {
+            if (!isLeaf(node)) continue;
+            String key = key(node);
+            if (key.equals(prev)) continue;
+            md.update(key.getBytes(StandardCharsets.UTF_8));
+            md.update((byte) '\n');
+            prev = key;
+        }
+        return HexFormat.of().formatHex(md.digest());
+    }
+
+    /** Nested node maps (legacy List&lt;Map&gt; shape). Only for callers that still need it; REST uses the serializer. */
+    public List<Map<String, Object>> toNodes() {
+        return toNodes(0, rootCount);
+    }
+
+    private List<Map<String, Object>> toNodes(int start, int count) {
+        List<Map<String, Object>> out = new ArrayList<>(count);
+        for (int i = start; i < start + count; i++) {
+            Map<String, Object> node = new LinkedHashMap<>();
+            node.put("title", title(i));
+            node.put("key", key(i));
+            if (typeRef[i] >= 0) node.put("dataType", dataType(i));
+            if (!isLeaf(i) || childCount[i] > 0) node.put("children", toNodes(childStart[i], childCount[i]));
+            node.put("isLeaf", isLeaf(i));
+            out.add(node);
+        }
+        return out;
+    }
+
+    /**
+     * Write nodes [start, start + count) with descendants down to depthLimit levels (-1 = unlimited, 1 = these
+     * nodes only). With withChildCount each group node also gets "childCount", so a client that received a
+     * depth-limited slice knows which nodes can be expanded.
+     */
+    public void writeJson(JsonGenerator g, int start, int count, int depthLimit, boolean withChildCount) throws IOException {
+        writeJson(g, start, count, depthLimit, withChildCount, Integer.MAX_VALUE);
+    }
+
+    /** As above; a node's children are only written when all of them lie below nodeLimit. */
+    private void writeJson(JsonGenerator g, int start, int count, int depthLimit, boolean withChildCount,
+                           int nodeLimit) throws IOException {
+        g.writeStartArray();
+        for (int i = start; i < start + count; i++) {
+            g.writeStartObject();
+            g.writeStringField("title", title(i));
+            g.writeStringField("key", key(i));
+            if (typeRef[i] >= 0) g.writeStringField("dataType", dataType(i));
+            if (!isLeaf(i) || childCount[i] > 0) {
+                if (withChildCount) g.writeNumberField("childCount", childCount[i]);
+                if (depthLimit != 1 && childStart[i] + childCount[i] <= nodeLimit) {
+                    g.writeFieldName("children");
+                    writeJson(g, childStart[i], childCount[i], depthLimit < 0 ? -1 : depthLimit - 1, withChildCount,
+                        nodeLimit);
+                }
+            }
+            g.writeBooleanField("isLeaf", isLeaf(i));
+            g.writeEndObject();
+        }
+        g.writeEndArray();
+    }
+
+    /**
+     * Page of the children of parent (-1 = top level): [offset, offset + limit) of that child range,
+     * each with descendants down to depth levels. Serializes as a node array with childCount on group nodes.
+     */
+    public Slice children(int parentNode, int offset, int limit, int depth) {
+        int first = parentNode < 0 ? 0 : childStart[parentNode];
+        int total = parentNode < 0 ? rootCount : childCount[parentNode];
+        int from = Math.min(Math.max(0, offset), total);
+        int count = Math.min(Math.max(0, limit), total - from);
+        return new Slice(this, first + from, count, total, depth);
+    }
+
+    /** A contiguous run of sibling nodes; see {@link #children(int, int, int, int)}. */
+    @JsonSerialize(using = SliceWriter.class)
+    public record Slice(CompactSchemaTree tree, int start, int count, int total, int depth) {}
+
+    public static final class SliceWriter extends StdSerializer<Slice> {
+        private static final long serialVersionUID = 1L;
+
+        public SliceWriter() { super(Slice.class); }
+
+        @Override
+        public void serialize(Slice slice, JsonGenerator g, SerializerProvider provider) throws IOException {
+            slice.tree().writeJson(g, slice.start(), slice.count(), slice.depth(), true);
+        }
+    }
+
+    /**
+     * The first maxNodes nodes in storage order, i.e. the top levels breadth-first, as a nested node array.
+     * A group node whose children do not all fit is written with childCount and without children, so a client
+     * can page into it with GET /api/schemas/{id}/nodes.
+     */
+    public Prefix prefix(int maxNodes) {
+        return new Prefix(this, Math.max(0, maxNodes));
+    }
+
+    /** See {@link #prefix(int)}. */
+    @JsonSerialize(using = PrefixWriter.class)
+    public record Prefix(CompactSchemaTree tree, int maxNodes) {}
+
+    public static final class PrefixWriter extends StdSerializer<Prefix> {
+        private static final long serialVersionUID = 1L;
+
+        public PrefixWriter() { super(Prefix.class); }
+
+        @Override
+        public void serialize(Prefix prefix, JsonGenerator g, SerializerProvider provider) throws IOException {
+            CompactSchemaTree tree = prefix.tree();
+            tree.writeJson(g, 0, Math.min(tree.rootCount, prefix.maxNodes()), -1, true, prefix.maxNodes());
+        }
+    }
+
+    // --- Construction -------------------------------------------------------------------------
+
+    /** Convert legacy nested node maps (title, key, children, isLeaf, dataType?). */
+    @SuppressWarnings("unchecked")
+    public static CompactSchemaTree fromNodes(List<Map<String, Object>> nodes) {
+        Builder b = new Builder();
+        Deque<Object[]> stack = new ArrayDeque<>();
+        if (nodes != null) {
+            for (int i = nodes.size() - 1; i >= 0; i--) stack.push(new Object[] { nodes.get(i), -1 });
+        }
+        while (!stack.isEmpty()) {
+            Object[] item = stack.pop();
+            Map<String, Object> node = (Map<String, Object>) item[0];
+            if (node == null) continue;
+            Object children = node.get("children");
+            int id = b.add((Integer) item[1], str(node.get("key")), str(node.get("title")),
+                Boolean.TRUE.equals(node.get("isLeaf")), node.get("dataType") == null ? null : node.get("dataType").toString());
+            if (children instanceof List<?> list) {
+                for (int i = list.size() - 1; i >= 0; i--) stack.push(new Object[] { list.get(i), id });
+            }
+        }
+        return b.build();
+    }
+
+    /** Stream a JSON node array (parser positioned on START_ARRAY) into a tree without building maps. */
+    public static CompactSchemaTree readJson(JsonParser p) throws IOException {
+        Builder b = new Builder();
+        if (p.currentToken() != JsonToken.START_ARRAY) throw new IOException("Expected tree array");
+        readJsonNodes(p, b, -1);
+        return b.build();
+    }
+
+    private static void readJsonNodes(JsonParser p, Builder b, int parentId) throws IOException {
+        while (p.nextToken() == JsonToken.START_OBJECT) {
+            String key = "", title = "", type = null;
+            boolean isLeaf = false;
+            int id = b.add(parentId, "", "", false, null);
+            while (p.nextToken() == JsonToken.FIELD_NAME) {
+                String field = p.getCurrentName();
+                JsonToken t = p.nextToken();
+                switch (field) {
+                    case "key" -> key = p.getValueAsString("");
+                    case "title" -> title = p.getValueAsString("");
+                    case "dataType" -> type = p.getValueAsString();
+                    case "isLeaf" -> isLeaf = t == JsonToken.VALUE_TRUE;
+                    case "children" -> {
+                        if (t == JsonToken.START_ARRAY) readJsonNodes(p, b, id);
+                        else p.skipChildren();
+                    }
+                    default -> p.skipChildren();
+                }
+            }
+            b.set(id, key, title, isLeaf, type);
+        }
+    }
+
+    private static String str(Object o) {
+        return o == null ? "" : o.toString();
+    }
+
+    /**
+     * Collects nodes in any order (typically depth-first, parents before children) and produces the
+     * breadth-first compact layout. Strings are de-duplicated into one table.
+     */
+    public static final class Builder {
+        private final Map<String, Integer> stringIds = new HashMap<>();
+        private final List<String> strings = new ArrayList<>();
+        private int[] parent = new int[64];
+        private int[] keyRef = new int[64];
+        private int[] titleRef = new int[64];
+        private int[] typeRef = new int[64];
+        private final BitSet leaf = new BitSet();
+        private int size;
+
+        /** Add a node under parentId (-1 for a top-level node); returns its id for use as a parent. */
+        public int add(int parentId, String key, String title, boolean isLeaf, String dataType) {
+            if (parentId >= size) throw new IllegalArgumentException("Unknown parent " + parentId);
+            if (size == parent.length) grow();
+            parent[size] = parentId;
+            set(size, key, title, isLeaf, dataType);
+            return size++;
+        }
+
+        public int add(int parentId, String key, String title, boolean isLeaf) {
+            return add(parentId, key, title, isLeaf, null);
+        }
+
+        void set(int id, String key, String title, boolean isLeaf, String dataType) {
+            keyRef[id] = intern(key == null ? "" : key);
+            titleRef[id] = intern(title == null ? "" : title);
+            typeRef[id] = dataType == null || dataType.isEmpty() ? -1 : intern(dataType);
+            leaf.set(id, isLeaf);
+        }
+
+        public void setLeaf(int id, boolean isLeaf) { leaf.set(id, isLeaf); }
+        public void setTitle(int id, String title) { titleRef[id] = intern(title == null ? "" : title); }
+        public void setDataType(int id, String dataType) { typeRef[id] = dataType == null || dataType.isEmpty() ? -1 : intern(dataType); }
+        public int size() { return size; }
+
+        private int intern(String s) {
+            Integer id = stringIds.get(s);
+            if (id != null) return id;
+            int next = strings.size();
+            strings.add(s);
+            stringIds.put(s, next);
+            return next;
+        }
+
+        private void grow() {
+            int cap = parent.length * 2;
+            parent = Arrays.copyOf(parent, cap);
+            keyRef = Arrays.copyOf(keyRef, cap);
+            titleRef = Arrays.copyOf(titleRef, cap);
+            typeRef = Arrays.copyOf(typeRef, cap);
+        }
+
+        public CompactSchemaTree build() {
+            int n = size;
+            // Children lists in insertion order, then a breadth-first renumbering
+            int[] firstChild = new int[n], nextSibling = new int[n], lastChild = new int[n];
+            Arrays.fill(firstChild, -1);
+            Arrays.fill(nextSibling, -1);
+            Arrays.fill(lastChild, -1);
+            List<Integer> roots = new ArrayList<>();
+            for (int i = 0; i < n; i++) {
+                int p = parent[i];
+                if (p < 0) { roots.add(i); continue; }
+                if (firstChild[p] < 0) firstChild[p] = i; else nextSibling[lastChild[p]] = i;
+                lastChild[p] = i;
+            }
+            int[] order = new int[n];
+            int[] newId = new int[n];
+            int w = 0;
+            for (int r : roots) { newId[r] = w; order[w++] = r; }
+            for (int r = 0; r < w; r++) {
+                for (int c = firstChild[order[r]]; c >= 0; c = nextSibling[c]) {
+                    newId[c] = w;
+                    order[w++] = c;
+                }
+            }
+            int[] np = new int[n], nk = new int[n], nt = new int[n], ny = new int[n];
+            BitSet nl = new BitSet(n);
+            for (int i = 0; i < n; i++) {
+                int old = order[i];
+                np[i] = parent[old] < 0 ? -1 : newId[parent[old]];
+                nk[i] = keyRef[old];
+                nt[i] = titleRef[old];
+                ny[i] = typeRef[old];
+                if (leaf.get(old)) nl.set(i);
+            }
+            return new CompactSchemaTree(strings.toArray(new String[0]), np, nk, nt, ny, nl);
+        }
+    }
+
+    // --- Binary format ------------------------------------------------------------------------
+
+    /**
+     * Deflated binary form: magic, version, string table (varint length + UTF-8), node count, then per node
+     * varint (parent + 1), key ref, title ref, type ref + 1 and a leaf byte. Child ranges are rebuilt on load.
+     */
+    public byte[] toBytes() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(bytes))) {
+            out.writeInt(MAGIC);
+            out.writeByte(FORMAT_VERSION);
+            writeVarint(out, strings.length);
+            for (String s : strings) {
+                byte[] b = s.getBytes(StandardCharsets.UTF_8);
+                writeVarint(out, b.length);
+                out.write(b);
+            }
+            writeVarint(out, parent.length);
+            for (int i = 0; i < parent.length; i++) {
+                writeVarint(out, parent[i] + 1);
+                writeVarint(out, keyRef[i]);
+                writeVarint(out, titleRef[i]);
+                writeVarint(out, typeRef[i] + 1);
+                out.writeByte(leaf.get(i) ? 1 : 0);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    public static CompactSchemaTree fromBytes(byte[] data) throws IOException {
+        try (DataInputStream in = new DataInputStream(new InflaterInputStream(new ByteArrayInputStream(data)))) {
+            if (in.readInt() != MAGIC) throw new IOException("Not a compact schema tree");
+            int version = in.readUnsignedByte();
+            if (version != FORMAT_VERSION) throw new IOException("Unsupported compact schema tree version " + version);
+            int sc = readVarint(in);
+            String[] strings = new String[sc];
+            for (int i = 0; i < sc; i++) {
+                byte[] b = new byte[readVarint(in)];
+                in.readFully(b);
+                strings[i] = new String(b, StandardCharsets.UTF_8);
+            }
+            int n = readVarint(in);
+            int[] parent = new int[n], keyRef = new int[n], titleRef = new int[n], typeRef = new int[n];
+            BitSet leaf = new BitSet(n);
+            for (int i = 0; i < n; i++) {
+                parent[i] = readVarint(in) - 1;
+                keyRef[i] = readVarint(in);
+                titleRef[i] = readVarint(in);
+                typeRef[i] = readVarint(in) - 1;
+                if (in.readUnsignedByte() != 0) leaf.set(i);
+                if (parent[i] >= i || keyRef[i] >= sc || titleRef[i] >= sc || typeRef[i] >= sc)
+                    throw new IOException("Corrupt compact schema tree at node " + i);
+            }
+            return new CompactSchemaTree(strings, parent, keyRef, titleRef, typeRef, leaf);
+        }
+    }
+
+    private static void writeVarint(DataOutput out, int v) throws IOException {
+        while ((v & ~0x7F) != 0) {
+            out.writeByte((v & 0x7F) | 0x80);
+            v >>>= 7;
+        }
+        out.writeByte(v);
+    }
+
+    private static int readVarint(DataInput in) throws IOException {
+        int v = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = in.readUnsignedByte();
+            v |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return v;
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    /** Jackson serializer: writes the full tree in the UI's node format. */
+    public static final class JsonWriter extends StdSerializer<CompactSchemaTree> {
+        private static final long serialVersionUID = 1L;
+
+        public JsonWriter() { super(CompactSchemaTree.class); }
+
+        @Override
+        public void serialize(CompactSchemaTree tree, JsonGenerator g, SerializerProvider provider) throws IOException {
+            tree.writeJson(g, 0, tree.rootCount, -1, false);
+        }
+    }
+}
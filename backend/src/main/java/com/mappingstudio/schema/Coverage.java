@@ -0,0 +1,19 @@
+package com.mappingstudio.schema;
+
+/** Project coverage: share of the target schema's leaves that have at least one mapping. */
+public final class Coverage {
+
+    private Coverage() {}
+
+    /**
+     * min(100, round(100 * distinct mapped targets / total target schema leaf count)). Never 100% for a single
+     * mapping (ready for deployment = more than one field mapped).
+     */
+    public static int percent(long distinctTargets, int totalLeaves) {
+        if (totalLeaves <= 0) totalLeaves = 1;
+        int coverage = (int) Math.min(100, Math.round(100.0 * distinctTargets / totalLeaves));
+        // Don't show 100% for one mapping so "ready for deployment" requires more than one field
+        if (distinctTargets == 1 && coverage == 100) coverage = 99;
+        return coverage;
+    }
+}
@@ -0,0 +1,241 @@
+package com.mappingstudio.schema;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Streaming CSV sample → {@link CompactSchemaTree}: the header plus the first {@code sampleRows} records are
+ * read with an RFC 4180 tokenizer (quoted fields, "" escapes, separators and line breaks inside quotes,
+ * CRLF / LF / CR record ends) and the rest of the file is never touched, so memory and time do not depend on
+ * the size of the extract. Each column is profiled over the sample and its inferred type (int, decimal,
+ * date, code or string) is stored as the leaf dataType.
+ */
+final class CsvSampleProfiler {
+
+    private static final int BUFFER_CHARS = 64 * 1024;
+    /** Longest field kept while sampling; longer values are truncated (they still end at the right place). */
+    private static final int MAX_FIELD_CHARS = 64 * 1024;
+    /** A column is a "code" when its non-empty values are short tokens from a small set. */
+    private static final int CODE_MAX_LENGTH = 12;
+    private static final int CODE_MAX_DISTINCT = 64;
+    private static final char[] SEPARATORS = { ',', '\t', ';', '|' };
+
+    private final Reader reader;
+    private final char[] buf = new char[BUFFER_CHARS];
+    private int pos, limit;
+    private char sep;
+    private final StringBuilder field = new StringBuilder();
+
+    private CsvSampleProfiler(Reader reader) {
+        this.reader = reader;
+    }
+
+    static CompactSchemaTree build(InputStream in, int sampleRows, int maxLeaves) throws IOException {
+        CsvSampleProfiler csv = new CsvSampleProfiler(new InputStreamReader(in, StandardCharsets.UTF_8));
+        CompactSchemaTree.Builder b = new CompactSchemaTree.Builder();
+        if (!csv.fill()) return b.build();
+        if (csv.buf[csv.pos] == '\uFEFF') csv.pos++;
+        csv.sep = csv.detectSeparator();
+        List<String> headers = new ArrayList<>();
+        if (!csv.readRecord(headers)) return b.build();
+        int columns = Math.min(headers.size(), maxLeaves);
+        ColumnProfile[] profiles = new ColumnProfile[columns];
+        for (int i = 0; i < columns; i++) profiles[i] = new ColumnProfile();
+        List<String> record = new ArrayList<>(columns);
+        for (int r = 0; r < sampleRows && csv.readRecord(record); r++) {
+            for (int i = 0; i < columns && i < record.size(); i++) profiles[i].observe(record.get(i));
+        }
+        for (int i = 0; i < columns; i++) {
+            String h = headers.get(i).trim();
+            if (h.isEmpty()) h = "field_" + (i + 1);
+            b.add(-1, SchemaTreeBuilders.safeKey(h), h, true, profiles[i].type());
+        }
+        return b.build();
+    }
+
+    // --- Tokenizer ---------------------------------------------------------------------------------
+
+    private boolean fill() throws IOException {
+        if (pos < limit) return true;
+        int n;
+        do {
+            n = reader.read(buf, 0, buf.length);
+        } while (n == 0);
+        pos = 0;
+        limit = Math.max(n, 0);
+        return n > 0;
+    }
+
+    /**
+     * Separator with the most unquoted occurrences in the header line (comma when none occurs). Only looks
+     * at the buffered prefix; headers longer than the buffer fall back to comma detection on what is there.
+     */
+    private char detectSeparator() {
+        int[] counts = new int[SEPARATORS.length];
+        boolean quoted = false;
+        for (int i = pos; i < limit; i++) {
+            char c = buf[i];
+            if (c == '"') quoted = !quoted;
+            else if (!quoted && (c == '\n' || c == '\r')) break;
+            else if (!quoted) {
+                for (int s = 0; s < SEPARATORS.length; s++) if (c == SEPARATORS[s]) counts[s]++;
+            }
+        }
+        int best = 0;
+        for (int s = 1; s < SEPARATORS.length; s++) if (counts[s] > counts[best]) best = s;
+        return SEPARATORS[best];
+    }
+
+    /** Next record into out (cleared first); false at end of input. Blank lines are skipped. */
+    private boolean readRecord(List<String> out) throws IOException {
+        out.clear();
+        while (true) {
+            if (!fill()) return false;
+            char c = buf[pos];
+            if (c != '\r' && c != '\n') break;
+            pos++;
+        }
+        while (true) {
+            int end = readField();
+            out.add(field.toString());
+            if (end != sep) return true;
+        }
+    }
+
+    /** Read one field into {@link #field}; returns the char that ended it (separator, '\n') or -1 at EOF. */
+    private int readField() throws IOException {
+        field.setLength(0);
+        if (!fill()) return -1;
+        boolean quoted = buf[pos] == '"';
+        if (quoted) pos++;
+        while (true) {
+            if (!fill()) return -1;
+            char c = buf[pos++];
+            if (quoted) {
+                if (c == '"') {
+                    if (!fill()) return -1;
+                    if (buf[pos] == '"') {
+                        pos++;
+                        append('"');
+                    } else {
+                        quoted = false; // closing quote; anything up to the next separator is kept verbatim
+                    }
+                } else {
+                    append(c);
+                }
+                continue;
+            }
+            if (c == sep) return sep;
+            if (c == '\n') return '\n';
+            if (c == '\r') {
+                if (fill() && buf[pos] == '\n') pos++;
+                return '\n';
+            }
+            append(c);
+        }
+    }
+
+    private void append(char c) {
+        if (field.length() < MAX_FIELD_CHARS) field.append(c);
+    }
+
+    // --- Column profiling --------------------------------------------------------------------------
+
+    /** Which types every non-empty sampled value still fits, plus what is needed to decide "code". */
+    private static final class ColumnProfile {
+        boolean isInt = true, isDecimal = true, isDate = true, isCode = true;
+        int values;
+        final Set<String> distinct = new HashSet<>();
+
+        void observe(String raw) {
+            String v = raw.trim();
+            if (v.isEmpty()) return;
+            values++;
+            if (isInt) isInt = isInteger(v);
+            if (isDecimal) isDecimal = isDecimal(v);
+            if (isDate) isDate = isDate(v);
+            if (isCode) {
+                isCode = v.length() <= CODE_MAX_LENGTH && v.chars().noneMatch(Character::isWhitespace);
+                if (isCode && distinct.size() <= CODE_MAX_DISTINCT) distinct.add(v);
+                if (distinct.size() > CODE_MAX_DISTINCT) isCode = false;
+            }
+        }
+
+        /** Inferred type, most specific first; null when the sample has no values for this column. */
+        String type() {
+            if (values == 0) return null;
+            if (isDate) return "date";
+            if (isInt) return "int";
+            if (isDecimal) return "decimal";
+            // A code repeats: fewer distinct values than half the sample (or a single value)
+            if (isCode && (distinct.size() == 1 || distinct.size() * 2 <= values)) return "code";
+            return "string";
+        }
+    }
+
+    /** Optional sign and digits; a leading zero (e.g. "00123") makes it a code, not a number. */
+    private static boolean isInteger(String v) {
+        int i = v.charAt(0) == '-' || v.charAt(0) == '+' ? 1 : 0;
+        int digits = v.length() - i;
+        if (digits == 0 || digits > 18) return false;
+        if (digits > 1 && v.charAt(i) == '0') return false;
+        for (; i < v.length(); i++) if (!isDigit(v.charAt(i))) return false;
+        return true;
+    }
+
+    /** Optional sign, digits with at most one '.', at least one digit; no leading zeros before a digit. */
+    private static boolean isDecimal(String v) {
+        int i = v.charAt(0) == '-' || v.charAt(0) == '+' ? 1 : 0;
+        if (i + 1 < v.length() && v.charAt(i) == '0' && isDigit(v.charAt(i + 1))) return false;
+        int digits = 0, dots = 0;
+        for (; i < v.length(); i++) {
+            char c = v.charAt(i);
+            if (isDigit(c)) digits++;
+            else if (c == '.' && ++dots == 1) continue;
+            else return false;
+        }
+        return digits > 0;
+    }
+
+    /**
+     * yyyy-MM-dd (optionally followed by a 'T' or ' ' time part), yyyyMMdd (EDI CCYYMMDD), MM/dd/yyyy or
+     * yyyy/MM/dd, with month and day range-checked.
+     */
+    private static boolean isDate(String v) {
+        int n = v.length();
+        if (n == 8 && allDigits(v, 0, 8)) return validDate(num(v, 0, 4), num(v, 4, 6), num(v, 6, 8));
+        if (n >= 10 && (v.charAt(4) == '-' || v.charAt(4) == '/') && v.charAt(7) == v.charAt(4)
+                && allDigits(v, 0, 4) && allDigits(v, 5, 7) && allDigits(v, 8, 10)
+                && (n == 10 || v.charAt(10) == 'T' || v.charAt(10) == ' ')) {
+            return validDate(num(v, 0, 4), num(v, 5, 7), num(v, 8, 10));
+        }
+        if (n == 10 && v.charAt(2) == '/' && v.charAt(5) == '/'
+                && allDigits(v, 0, 2) && allDigits(v, 3, 5) && allDigits(v, 6, 10)) {
+            return validDate(num(v, 6, 10), num(v, 0, 2), num(v, 3, 5));
+        }
+        return false;
+    }
+
+    private static boolean validDate(int year, int month, int day) {
+        return year >= 1800 && year <= 2199 && month >= 1 && month <= 12 && day >= 1 && day <= 31;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean allDigits(String v, int from, int to) {
+        for (int i = from; i < to; i++) if (!isDigit(v.charAt(i))) return false;
+        return true;
+    }
+
+    private static int num(String v, int from, int to) {
+        int n = 0;
+        for (int i = from; i < to; i++) n = n * 10 + (v.charAt(i) - '0');
+        return n;
+    }
+}
@@ -0,0 +1,110 @@
+package com.mappingstudio.schema;
+
+import com.mappingstudio.model.CustomSchemaEntity;
+import com.mappingstudio.repository.CustomSchemaRepository;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.Sort;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * One-time conversion of custom_schemas rows from the TEXT tree_json blob to the compact tree_bin format.
+ * Hibernate's ddl-auto=update adds tree_bin but cannot relax the old NOT NULL on tree_json (SQLite has no
+ * ALTER COLUMN), so the table is rebuilt once with the same definition minus that constraint. Rows stored
+ * before the tree statistics columns existed get them backfilled once.
+ */
+@Component
+public class CustomSchemaStorageMigration {
+
+    private static final Logger log = LoggerFactory.getLogger(CustomSchemaStorageMigration.class);
+    private static final String TABLE = "custom_schemas";
+    private static final Pattern TREE_JSON_NOT_NULL = Pattern.compile("(tree_json\\s+TEXT)\\s+not\\s+null", Pattern.CASE_INSENSITIVE);
+
+    private final JdbcTemplate jdbc;
+    private final CustomSchemaRepository repo;
+    private final TransactionTemplate tx;
+
+    public CustomSchemaStorageMigration(JdbcTemplate jdbc, CustomSchemaRepository repo, PlatformTransactionManager txManager) {
+        this.jdbc = jdbc;
+        this.repo = repo;
+        this.tx = new TransactionTemplate(txManager);
+    }
+
+    @PostConstruct
+    public void migrate() {
+        tx.executeWithoutResult(s -> relaxTreeJsonConstraint());
+        tx.executeWithoutResult(s -> convertLegacyRows());
+        tx.executeWithoutResult(s -> backfillStats());
+    }
+
+    private void relaxTreeJsonConstraint() {
+        List<Map<String, Object>> cols = jdbc.queryForList("PRAGMA table_info(" + TABLE + ")");
+        boolean notNull = cols.stream().anyMatch(c -> "tree_json".equalsIgnoreCase(String.valueOf(c.get("name")))
+            && Integer.valueOf(1).equals(((Number) c.get("notnull")).intValue()));
+        if (!notNull) return;
+        String createSql = jdbc.queryForObject(
+            "SELECT sql FROM sqlite_master WHERE type = 'table' AND name = ?", String.class, TABLE);
+        List<String> indexSql = jdbc.queryForList(
+            "SELECT sql FROM sqlite_master WHERE type = 'index' AND tbl_name = ? AND sql IS NOT NULL", String.class, TABLE);
+        String relaxed = TREE_JSON_NOT_NULL.matcher(createSql).replaceFirst("$1")
+            .replaceFirst("(?i)CREATE TABLE\\s+\"?" + TABLE + "\"?", "CREATE TABLE " + TABLE + "_new");
+        jdbc.execute(relaxed);
+        jdbc.execute("INSERT INTO " + TABLE + "_new SELECT * FROM " + TABLE);
+        jdbc.execute("DROP TABLE " + TABLE);
+        jdbc.execute("ALTER TABLE " + TABLE + "_new RENAME TO " + TABLE);
+        for (String sql : indexSql) jdbc.execute(sql);
+        log.info("Relaxed NOT NULL on {}.tree_json for binary tree storage", TABLE);
+    }
+
+    private void convertLegacyRows() {
+        int converted = 0;
+        for (CustomSchemaEntity e : repo.findAll()) {
+            if (e.getTreeBin() != null || e.getTreeJson() == null) continue;
+            try {
+                e.setTreeBin(SchemaCache.readTree(e).toBytes());
+                e.setTreeJson(null);
+                repo.save(e);
+                converted++;
+            } catch (Exception ex) {
+                log.warn("Could not convert custom schema {} to binary tree: {}", e.getId(), ex.getMessage());
+            }
+        }
+        if (converted > 0) log.info("Converted {} custom schema(s) to binary tree storage", converted);
+    }
+
+    /** Compute leaf/node counts, depth and key fingerprint for rows without them; duplicates copy their canonical row. */
+    private void backfillStats() {
+        if (jdbc.queryForObject("SELECT COUNT(*) FROM " + TABLE + " WHERE leaf_count IS NULL", Integer.class) == 0) return;
+        Map<String, SchemaStats> byHash = new HashMap<>();
+        int filled = 0;
+        for (CustomSchemaEntity e : repo.findAll(Sort.by("id"))) {
+            SchemaStats stats = SchemaStats.of(e);
+            try {
+                if (stats == null) {
+                    if (e.getTreeBin() != null || e.getTreeJson() != null) {
+                        stats = SchemaStats.of(SchemaCache.readTree(e));
+                    } else if (e.getContentHash() != null) {
+                        stats = byHash.get(e.getContentHash());
+                    }
+                    if (stats == null) continue;
+                    stats.applyTo(e);
+                    repo.save(e);
+                    filled++;
+                }
+                if (e.getContentHash() != null && e.getTreeBin() != null) byHash.putIfAbsent(e.getContentHash(), stats);
+            } catch (Exception ex) {
+                log.warn("Could not compute statistics for custom schema {}: {}", e.getId(), ex.getMessage());
+            }
+        }
+        if (filled > 0) log.info("Backfilled tree statistics for {} custom schema(s)", filled);
+    }
+}
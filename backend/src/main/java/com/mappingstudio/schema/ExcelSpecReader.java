@@ -0,0 +1,107 @@
+package com.mappingstudio.schema;
+
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.ss.usermodel.DataFormatter;
+import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.util.XMLHelper;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.eventusermodel.XSSFSheetXMLHandler;
+import org.apache.poi.xssf.usermodel.XSSFComment;
+import org.xml.sax.InputSource;
+import org.xml.sax.XMLReader;
+
+import java.io.File;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+import java.util.Locale;
+
+/**
+ * Excel spec (.xlsx) → {@link CompactSchemaTree} with the XSSF event API: the first sheet's XML is streamed
+ * through a SAX handler and only the header-detected field / datatype / requirement cells are kept; no
+ * workbook object model (styles, cells, rows) is built. The upload is copied to a temp file so the package
+ * is read from disk rather than unzipped into memory.
+ */
+final class ExcelSpecReader implements XSSFSheetXMLHandler.SheetContentsHandler {
+
+    private final CompactSchemaTree.Builder b;
+    private final int maxLeaves;
+    private int fieldCol = -1, datatypeCol = -1, requirementCol = -1;
+    private boolean headerSeen;
+    private int currentRow;
+    private String field, datatype, requirement;
+
+    private ExcelSpecReader(CompactSchemaTree.Builder b, int maxLeaves) {
+        this.b = b;
+        this.maxLeaves = maxLeaves;
+    }
+
+    static CompactSchemaTree read(InputStream in, int maxLeaves) throws Exception {
+        Path tmp = Files.createTempFile("schema-spec-", ".xlsx");
+        try {
+            Files.copy(in, tmp, StandardCopyOption.REPLACE_EXISTING);
+            return read(tmp.toFile(), maxLeaves);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    private static CompactSchemaTree read(File file, int maxLeaves) throws Exception {
+        CompactSchemaTree.Builder b = new CompactSchemaTree.Builder();
+        OPCPackage pkg = OPCPackage.open(file, PackageAccess.READ);
+        try {
+            XSSFReader reader = new XSSFReader(pkg);
+            Iterator<InputStream> sheets = reader.getSheetsData();
+            if (!sheets.hasNext()) return b.build();
+            ReadOnlySharedStringsTable strings = new ReadOnlySharedStringsTable(pkg, false);
+            ExcelSpecReader handler = new ExcelSpecReader(b, maxLeaves);
+            XMLReader parser = XMLHelper.newXMLReader();
+            parser.setContentHandler(new XSSFSheetXMLHandler(
+                reader.getStylesTable(), strings, handler, new DataFormatter(Locale.ROOT), false));
+            try (InputStream sheet = sheets.next()) {
+                parser.parse(new InputSource(sheet));
+            }
+        } finally {
+            pkg.revert();
+        }
+        return b.build();
+    }
+
+    @Override
+    public void startRow(int rowNum) {
+        currentRow = rowNum;
+        field = datatype = requirement = null;
+    }
+
+    @Override
+    public void cell(String cellReference, String formattedValue, XSSFComment comment) {
+        if (formattedValue == null) return;
+        int col = cellReference != null ? new CellReference(cellReference).getCol() : -1;
+        if (currentRow == 0) {
+            headerSeen = true;
+            String lower = formattedValue.trim().toLowerCase();
+            if (fieldCol < 0 && (lower.contains("field") || lower.equals("name"))) fieldCol = col;
+            if (datatypeCol < 0 && (lower.contains("datatype") || lower.contains("data type") || lower.equals("type"))) datatypeCol = col;
+            if (requirementCol < 0 && (lower.contains("requirement") || lower.contains("required"))) requirementCol = col;
+            return;
+        }
+        // Every other column is dropped as soon as it is seen
+        if (col == fieldCol) field = formattedValue;
+        else if (col == datatypeCol) datatype = formattedValue;
+        else if (col == requirementCol) requirement = formattedValue;
+    }
+
+    @Override
+    public void endRow(int rowNum) {
+        if (rowNum == 0) {
+            if (fieldCol < 0) fieldCol = 0;
+            return;
+        }
+        if (!headerSeen || b.size() >= maxLeaves) return;
+        SchemaTreeBuilders.addSpecLeaf(b, field, datatype, requirement);
+    }
+}
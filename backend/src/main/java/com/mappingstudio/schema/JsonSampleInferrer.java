@@ -0,0 +1,172 @@
+package com.mappingstudio.schema;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.*;
+
+/**
+ * Streaming JSON sample → {@link CompactSchemaTree}. The sample is read token by token and folded into a
+ * shape model (field sets, element shapes and observed scalar types); the object graph is never built, so
+ * memory grows with the number of distinct fields, not with the size of the sample. Every array element
+ * is merged (optional fields that only appear in later elements are kept), and a sequence of root values
+ * (NDJSON / JSON Lines) is merged as records of one root shape.
+ */
+final class JsonSampleInferrer {
+
+    private static final JsonFactory JSON = new JsonFactory();
+    private static final int OBJECT = 1, ARRAY = 2, STRING = 4, INTEGER = 8, NUMBER = 16, BOOLEAN = 32, NULL = 64;
+    private static final int MAX_HINT = 30;
+
+    /** Merged shape of every value seen at one path. */
+    private static final class Shape {
+        int kinds;
+        /** Object fields in first-seen order; null until an object is seen. */
+        Map<String, Shape> fields;
+        /** Shape of all array elements merged; null until a non-empty array is seen. */
+        Shape items;
+        /** First non-null scalar, for the title hint. */
+        String sample;
+    }
+
+    private final int maxDepth;
+    /** Bounds both distinct fields tracked while reading and leaves emitted. */
+    private final int maxShapes;
+    private int shapes;
+    private int leaves;
+    private final CompactSchemaTree.Builder b = new CompactSchemaTree.Builder();
+
+    private JsonSampleInferrer(int maxDepth, int maxShapes) {
+        this.maxDepth = maxDepth;
+        this.maxShapes = maxShapes;
+    }
+
+    static CompactSchemaTree build(InputStream in, int maxDepth, int maxLeaves) throws IOException {
+        JsonSampleInferrer x = new JsonSampleInferrer(maxDepth, maxLeaves);
+        Shape root = new Shape();
+        boolean any = false;
+        // Jackson detects the encoding (and skips a BOM) and reads whitespace-separated root values
+        try (JsonParser p = JSON.createParser(in)) {
+            while (p.nextToken() != null) {
+                x.merge(root, p, 0);
+                any = true;
+            }
+        }
+        if (!any) throw new IOException("No JSON content");
+        x.emit(root, -1, "", "root", 0);
+        return x.b.build();
+    }
+
+    // --- Pass 1: fold tokens into the shape model --------------------------------------------------
+
+    private void merge(Shape s, JsonParser p, int depth) throws IOException {
+        JsonToken t = p.currentToken();
+        switch (t) {
+            case START_OBJECT -> {
+                s.kinds |= OBJECT;
+                if (s.fields == null) s.fields = new LinkedHashMap<>();
+                if (depth >= maxDepth) {
+                    p.skipChildren();
+                    return;
+                }
+                while (p.nextToken() == JsonToken.FIELD_NAME) {
+                    String name = p.currentName();
+                    p.nextToken();
+                    Shape child = s.fields.get(name);
+                    if (child == null) {
+                        if (shapes >= maxShapes) {
+                            p.skipChildren();
+                            continue;
+                        }
+                        shapes++;
+                        child = new Shape();
+                        s.fields.put(name, child);
+                    }
+                    merge(child, p, depth + 1);
+                }
+            }
+            case START_ARRAY -> {
+                s.kinds |= ARRAY;
+                if (depth >= maxDepth) {
+                    p.skipChildren();
+                    return;
+                }
+                while (p.nextToken() != JsonToken.END_ARRAY) {
+                    if (s.items == null) s.items = new Shape();
+                    merge(s.items, p, depth + 1);
+                }
+            }
+            case VALUE_NULL -> s.kinds |= NULL;
+            case VALUE_TRUE, VALUE_FALSE -> scalar(s, BOOLEAN, p);
+            case VALUE_NUMBER_INT -> scalar(s, INTEGER, p);
+            case VALUE_NUMBER_FLOAT -> scalar(s, NUMBER, p);
+            default -> scalar(s, STRING, p);
+        }
+    }
+
+    private static void scalar(Shape s, int kind, JsonParser p) throws IOException {
+        s.kinds |= kind;
+        if (s.sample == null) {
+            String text = p.getText();
+            s.sample = text.length() > MAX_HINT ? text.substring(0, MAX_HINT + 1) : text; // leaf() adds the ellipsis
+        }
+    }
+
+    // --- Pass 2: shape model → tree (path keys, "name • sample" leaf titles) ---------------------------
+
+    private void emit(Shape s, int parentId, String path, String nodeKey, int depth) {
+        if (depth >= maxDepth || leaves >= maxShapes) return;
+        String key = path.isEmpty() ? nodeKey : path;
+        if ((s.kinds & OBJECT) != 0 && !s.fields.isEmpty()) {
+            int id = b.add(parentId, key, nodeKey + " (object)", false);
+            fields(s, id, path, depth);
+            return;
+        }
+        if ((s.kinds & ARRAY) != 0 && s.items != null) {
+            Shape items = s.items;
+            while ((items.kinds & ARRAY) != 0 && items.items != null && (items.kinds & OBJECT) == 0) items = items.items;
+            if ((items.kinds & OBJECT) != 0 && !items.fields.isEmpty()) {
+                int id = b.add(parentId, key, nodeKey + " (array)", false);
+                fields(items, id, key, depth);
+            } else {
+                leaf(parentId, key, nodeKey, items.sample, typeName(items.kinds) + "[]");
+            }
+            return;
+        }
+        if ((s.kinds & OBJECT) != 0) leaf(parentId, key, nodeKey, "(empty object)", "object");
+        else if ((s.kinds & ARRAY) != 0) leaf(parentId, key, nodeKey, "(empty array)", "array");
+        else leaf(parentId, key, nodeKey, s.sample != null ? s.sample : "null", typeName(s.kinds));
+    }
+
+    private void fields(Shape s, int id, String path, int depth) {
+        for (Map.Entry<String, Shape> e : s.fields.entrySet()) {
+            String k = e.getKey();
+            String childPath = path.isEmpty() ? k : path + "." + k;
+            emit(e.getValue(), id, childPath, SchemaTreeBuilders.safeKey(k), depth + 1);
+        }
+    }
+
+    private void leaf(int parentId, String key, String nodeKey, String hint, String dataType) {
+        leaves++;
+        String title = nodeKey;
+        if (hint != null && !hint.isEmpty()) title += " • " + (hint.length() > MAX_HINT ? hint.substring(0, MAX_HINT - 3) + "…" : hint);
+        b.add(parentId, key, title, true, dataType);
+    }
+
+    /** Observed scalar kinds as a "|"-joined type name, e.g. "string|null"; integer is folded into number. */
+    private static String typeName(int kinds) {
+        if ((kinds & NUMBER) != 0) kinds &= ~INTEGER;
+        StringJoiner j = new StringJoiner("|");
+        if ((kinds & STRING) != 0) j.add("string");
+        if ((kinds & INTEGER) != 0) j.add("integer");
+        if ((kinds & NUMBER) != 0) j.add("number");
+        if ((kinds & BOOLEAN) != 0) j.add("boolean");
+        if ((kinds & OBJECT) != 0) j.add("object");
+        if ((kinds & ARRAY) != 0) j.add("array");
+        if ((kinds & NULL) != 0) j.add("null");
+        return j.length() == 0 ? "null" : j.toString();
+    }
+}
@@ -0,0 +1,140 @@
+package com.mappingstudio.schema;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * Immutable, parsed schema: the document returned to the UI (metadata + "tree") plus statistics
+ * computed once when the schema is parsed (leaf count, depth, key index, search index). Instances are shared
+ * between requests; the tree is a {@link CompactSchemaTree} and is only turned into JSON when written.
+ * Serialized bodies are not held here (see SchemaBodyCache), so an instance's size is fixed by its tree
+ * and index.
+ */
+public final class ParsedSchema {
+
+    /**
+     * Most nodes the full document (GET /api/schemas/{id}) carries. Larger trees are sent as their top levels
+     * up to this many nodes, with "truncated": true and childCount on the nodes left unexpanded; the rest is
+     * reached through the paged /nodes and /search endpoints, so the browser never holds a huge tree.
+     */
+    static final int DOCUMENT_MAX_NODES = 20_000;
+
+    private static final JsonFactory JSON = new JsonFactory();
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final Map<String, Object> document;
+    private final CompactSchemaTree tree;
+    private final SchemaSearchIndex searchIndex;
+    /** Strong ETag of the serialized document, computed on first request. */
+    private volatile String etag;
+
+    private ParsedSchema(Map<String, Object> document, CompactSchemaTree tree, SchemaSearchIndex searchIndex) {
+        this.document = document;
+        this.tree = tree;
+        this.searchIndex = searchIndex;
+    }
+
+    /** Wrap metadata + tree. Metadata order is kept; "tree" is appended last. */
+    public static ParsedSchema of(Map<String, Object> metadata, CompactSchemaTree tree) {
+        return new ParsedSchema(document(metadata, tree), tree, SchemaSearchIndex.build(tree));
+    }
+
+    /**
+     * Same tree and search index under different metadata (e.g. a duplicate upload with another name);
+     * nothing is re-parsed or re-indexed.
+     */
+    public ParsedSchema withMetadata(Map<String, Object> metadata) {
+        return new ParsedSchema(document(metadata, tree), tree, searchIndex);
+    }
+
+    private static Map<String, Object> document(Map<String, Object> metadata, CompactSchemaTree tree) {
+        Map<String, Object> doc = new LinkedHashMap<>();
+        if (metadata != null) metadata.forEach((k, v) -> { if (!"tree".equals(k) && v != null) doc.put(k, v); });
+        if (tree.size() > DOCUMENT_MAX_NODES) {
+            doc.put("truncated", true);
+            doc.put("nodeCount", tree.size());
+            doc.put("leafCount", tree.leafCount());
+            doc.put("tree", tree.prefix(DOCUMENT_MAX_NODES));
+        } else {
+            doc.put("tree", tree);
+        }
+        return Collections.unmodifiableMap(doc);
+    }
+
+    /**
+     * Stream a schema document (top-level scalar metadata + "tree" node array) straight into the compact
+     * model; no intermediate maps are built for the tree.
+     */
+    public static ParsedSchema readJson(InputStream in) throws IOException {
+        Map<String, Object> metadata = new LinkedHashMap<>();
+        CompactSchemaTree tree = null;
+        try (JsonParser p = JSON.createParser(in)) {
+            if (p.nextToken() != JsonToken.START_OBJECT) throw new IOException("Expected JSON object");
+            while (p.nextToken() == JsonToken.FIELD_NAME) {
+                String field = p.getCurrentName();
+                JsonToken t = p.nextToken();
+                if ("tree".equals(field) && t == JsonToken.START_ARRAY) {
+                    tree = CompactSchemaTree.readJson(p);
+                } else if (t.isScalarValue()) {
+                    if (t != JsonToken.VALUE_NULL) metadata.put(field, p.getValueAsString());
+                } else {
+                    p.skipChildren();
+                }
+            }
+        }
+        return of(metadata, tree != null ? tree : new CompactSchemaTree.Builder().build());
+    }
+
+    /** Full document as served to the UI: metadata + "tree". Unmodifiable. */
+    public Map<String, Object> getDocument() { return document; }
+
+    public CompactSchemaTree getTree() { return tree; }
+
+    /** Leaf key/title search index, built with the schema. */
+    public SchemaSearchIndex getSearchIndex() { return searchIndex; }
+
+    /** Number of mappable (leaf) elements; used as the coverage denominator. */
+    public int getLeafCount() { return tree.leafCount(); }
+
+    /** Depth of the deepest node (top-level nodes are depth 1). */
+    public int getMaxDepth() { return tree.maxDepth(); }
+
+    /** UTF-8 JSON of the document, serialized on every call (SchemaBodyCache keeps the bytes). */
+    public byte[] toJson() {
+        try {
+            return MAPPER.writeValueAsBytes(document);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Strong content-hash ETag for the document (identity encoding), computed once per parsed instance.
+     * A new schema version is always a new ParsedSchema, so the tag changes exactly when the content does.
+     */
+    public String getETag() {
+        String tag = etag;
+        if (tag == null) {
+            try {
+                byte[] digest = MessageDigest.getInstance("SHA-256").digest(toJson());
+                tag = "\"" + Base64.getUrlEncoder().withoutPadding().encodeToString(Arrays.copyOf(digest, 18)) + "\"";
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+            etag = tag;
+        }
+        return tag;
+    }
+
+    /** True if any node (leaf or group) has this key. */
+    public boolean containsKey(String key) { return tree.containsKey(key); }
+}
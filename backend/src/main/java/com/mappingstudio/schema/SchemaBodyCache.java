@@ -0,0 +1,53 @@
+package com.mappingstudio.schema;
+
+import com.mappingstudio.cache.BoundedCache;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.Map;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Serialized schema documents (identity, gzip and deflate bodies), bounded by total bytes and kept apart
+ * from the parsed trees so a large JSON body never hides behind a node-count weight. Keyed by the document's
+ * content ETag and content-coding: custom and EDI schemas with the same document share bodies, and a new
+ * version (new content, new tag) never sees an old one. Evicted bodies are serialized again on the next request.
+ */
+@Component
+public class SchemaBodyCache {
+
+    public enum Coding { IDENTITY, GZIP, DEFLATE }
+
+    private record Key(String etag, Coding coding) {}
+
+    private final BoundedCache<Key, byte[]> bodies;
+
+    public SchemaBodyCache(@Value("${app.cache.schema-body-max-bytes:134217728}") long maxBytes) {
+        this.bodies = new BoundedCache<>("schemaBodies", maxBytes, b -> b.length);
+    }
+
+    /** Body of the schema's document in the given coding; callers must not modify the array. */
+    public byte[] body(ParsedSchema schema, Coding coding) {
+        return bodies.get(new Key(schema.getETag(), coding), k -> encode(schema.toJson(), coding));
+    }
+
+    public Map<String, Object> stats() {
+        return bodies.stats();
+    }
+
+    private static byte[] encode(byte[] raw, Coding coding) {
+        if (coding == Coding.IDENTITY) return raw;
+        ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, raw.length / 4));
+        try (OutputStream z = coding == Coding.GZIP ? new GZIPOutputStream(out) : new DeflaterOutputStream(out)) {
+            z.write(raw);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+}
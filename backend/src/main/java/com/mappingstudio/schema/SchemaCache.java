@@ -0,0 +1,169 @@
+package com.mappingstudio.schema;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mappingstudio.cache.BoundedCache;
+import com.mappingstudio.model.CustomSchemaEntity;
+import com.mappingstudio.repository.CustomSchemaRepository;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+
+/**
+ * Parsed custom (uploaded) schemas, keyed by entity id and by display name.
+ * Each stored tree is decoded once (on first use or when uploaded) into an immutable {@link ParsedSchema};
+ * readers never touch the stored bytes again. Leaf counts for coverage come from the persisted column and
+ * are loaded at startup without decoding any tree. Rows that are content-hash duplicates of a canonical upload
+ * (no treeBin of their own) share the canonical tree and search index.
+ * All maps are bounded (parsed trees by total node count, names by entry count) and evict least recently
+ * used entries; anything evicted is read back from the repository on the next lookup.
+ */
+@Component
+public class SchemaCache {
+
+    private static final Logger log = LoggerFactory.getLogger(SchemaCache.class);
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final CustomSchemaRepository customRepo;
+    private final BoundedCache<Long, ParsedSchema> byId;
+    private final BoundedCache<String, Long> idByName;
+    /** Canonical parsed schema per content hash, for duplicates to share. */
+    private final BoundedCache<String, ParsedSchema> byHash;
+    /** Persisted leaf count of the latest upload per name. */
+    private final BoundedCache<String, Integer> leafCountByName;
+
+    public SchemaCache(CustomSchemaRepository customRepo, CustomSchemaStorageMigration storageMigration,
+                       @Value("${app.cache.schema-max-nodes:1000000}") long maxNodes,
+                       @Value("${app.cache.schema-max-names:10000}") int maxNames) {
+        // storageMigration is a dependency only so legacy rows are converted (and stats backfilled) before loadAll runs
+        this.customRepo = customRepo;
+        this.byId = new BoundedCache<>("schemas", maxNodes, p -> p.getTree().size());
+        this.byHash = new BoundedCache<>("schemaContent", maxNodes, p -> p.getTree().size());
+        this.idByName = BoundedCache.ofSize("schemaIdByName", maxNames);
+        this.leafCountByName = BoundedCache.ofSize("schemaLeafCounts", maxNames);
+    }
+
+    /** Warm name → id and leaf counts from the stored columns; trees are decoded lazily on first use. */
+    @PostConstruct
+    public void loadAll() {
+        for (Object[] row : customRepo.findLeafCounts()) {
+            Long id = (Long) row[0];
+            String name = (String) row[1];
+            if (name == null) continue;
+            idByName.put(name, id);
+            leafCountByName.put(name, (Integer) row[2]);
+        }
+    }
+
+    /** Parse and (re)place the cache entry for a saved entity. Called by SchemaUploadService after save. */
+    public ParsedSchema put(CustomSchemaEntity e) {
+        return put(e, true);
+    }
+
+    /** @param latest e is the newest upload of its name (else it only replaces an older cached name entry) */
+    private ParsedSchema put(CustomSchemaEntity e, boolean latest) {
+        ParsedSchema parsed;
+        if (e.getTreeBin() == null && e.getTreeJson() == null && e.getContentHash() != null) {
+            parsed = canonical(e.getContentHash()).withMetadata(metadata(e));
+        } else {
+            parsed = parse(e);
+            if (e.getContentHash() != null) byHash.merge(e.getContentHash(), parsed, (cached, p) -> cached);
+        }
+        byId.put(e.getId(), parsed);
+        // Older versions loaded by id must not take the name over from the latest upload (even once it was evicted)
+        boolean claim = e.getName() != null && (latest || idByName.getIfPresent(e.getName()) != null);
+        if (claim && e.getId().equals(idByName.merge(e.getName(), e.getId(), Math::max))) {
+            leafCountByName.put(e.getName(), e.getLeafCount() != null ? e.getLeafCount() : parsed.getLeafCount());
+        }
+        return parsed;
+    }
+
+    /** Drop the entry for this entity (e.g. after delete or replace). */
+    public void invalidate(Long id) {
+        if (id == null) return;
+        ParsedSchema removed = byId.invalidate(id);
+        List<String> names = new ArrayList<>();
+        idByName.removeIf((name, cachedId) -> {
+            if (!id.equals(cachedId)) return false;
+            names.add(name);
+            return true;
+        });
+        for (String name : names) leafCountByName.invalidate(name);
+        if (removed != null) byHash.removeIf((hash, p) -> p == removed);
+    }
+
+    /** Parsed tree for a content hash, from the cache or the canonical row. */
+    private ParsedSchema canonical(String contentHash) {
+        ParsedSchema cached = byHash.getIfPresent(contentHash);
+        if (cached != null) return cached;
+        CustomSchemaEntity canonical = customRepo.findFirstByContentHashAndTreeBinIsNotNullOrderByIdAsc(contentHash)
+            .orElseThrow(() -> new IllegalStateException("No stored tree for content hash " + contentHash));
+        return put(canonical, false);
+    }
+
+    /** Parsed custom schema by entity id; loads from the repository on a miss. */
+    public Optional<ParsedSchema> getById(long id) {
+        ParsedSchema cached = byId.getIfPresent(id);
+        if (cached != null) return Optional.of(cached);
+        return customRepo.findById(id).map(e -> put(e, false));
+    }
+
+    /** Parsed custom schema by display name (as stored on ProjectEntity.targetSchema). */
+    public Optional<ParsedSchema> getByName(String name) {
+        if (name == null) return Optional.empty();
+        Long id = idByName.getIfPresent(name);
+        if (id != null) {
+            ParsedSchema cached = byId.getIfPresent(id);
+            if (cached != null) return Optional.of(cached);
+        }
+        return customRepo.findFirstByNameOrderByIdDesc(name).map(this::put);
+    }
+
+    /**
+     * Leaf count of the latest upload with this name, from the persisted column; the tree is only decoded
+     * for rows stored before the column existed that the startup backfill could not fill.
+     */
+    public Optional<Integer> leafCount(String name) {
+        if (name == null) return Optional.empty();
+        Integer cached = leafCountByName.getIfPresent(name);
+        if (cached != null) return Optional.of(cached);
+        List<Integer> stored = customRepo.findLeafCountsByName(name);
+        if (stored.isEmpty()) return Optional.empty();
+        if (stored.get(0) != null) {
+            leafCountByName.put(name, stored.get(0));
+            return Optional.of(stored.get(0));
+        }
+        return getByName(name).map(ParsedSchema::getLeafCount);
+    }
+
+    /** Hit / miss / eviction counts of each map, for GET /api/cache/stats. */
+    public List<Map<String, Object>> stats() {
+        return List.of(byId.stats(), byHash.stats(), idByName.stats(), leafCountByName.stats());
+    }
+
+    /** Decode the stored tree: binary form when present, else the legacy JSON blob. */
+    static CompactSchemaTree readTree(CustomSchemaEntity e) {
+        try {
+            if (e.getTreeBin() != null) return CompactSchemaTree.fromBytes(e.getTreeBin());
+            List<Map<String, Object>> nodes = MAPPER.readValue(e.getTreeJson(), new TypeReference<>() {});
+            return CompactSchemaTree.fromNodes(nodes);
+        } catch (Exception ex) {
+            throw new IllegalStateException("Invalid stored tree for custom schema " + e.getId(), ex);
+        }
+    }
+
+    private static ParsedSchema parse(CustomSchemaEntity e) {
+        return ParsedSchema.of(metadata(e), readTree(e));
+    }
+
+    private static Map<String, Object> metadata(CustomSchemaEntity e) {
+        Map<String, Object> meta = new LinkedHashMap<>();
+        meta.put("name", e.getName());
+        meta.put("type", e.getType());
+        return meta;
+    }
+}
@@ -0,0 +1,139 @@
+package com.mappingstudio.schema;
+
+import java.util.*;
+import java.util.function.BiFunction;
+
+/**
+ * Leaf-level diff between two versions of a schema tree, in O(n): leaves are matched by key (the key is the
+ * node's path) through a hash map. Of the leaves left unmatched, a removed and an added leaf are paired as a
+ * rename when they are the only unmatched leaves with the same name (moved to another parent), or else when
+ * they sit at the same position under the same parent key (renamed in place).
+ */
+public final class SchemaDiff {
+
+    public record Rename(String from, String to) {}
+
+    private final List<String> added;
+    private final List<String> removed;
+    private final List<Rename> renamed;
+    private final int unchanged;
+
+    private SchemaDiff(List<String> added, List<String> removed, List<Rename> renamed, int unchanged) {
+        this.added = added;
+        this.removed = removed;
+        this.renamed = renamed;
+        this.unchanged = unchanged;
+    }
+
+    public static SchemaDiff compute(CompactSchemaTree from, CompactSchemaTree to) {
+        Map<String, Integer> oldLeaves = leafIndex(from);
+        List<Integer> addedNodes = new ArrayList<>();
+        int unchanged = 0;
+        for (int n = 0; n < to.size(); n++) {
+            if (!to.isLeaf(n)) continue;
+            if (oldLeaves.remove(to.key(n)) != null) unchanged++;
+            else addedNodes.add(n);
+        }
+        // Whatever is left in oldLeaves was removed (or renamed)
+        List<Integer> removedNodes = new ArrayList<>(oldLeaves.values());
+        Collections.sort(removedNodes);
+
+        List<Rename> renamed = new ArrayList<>();
+        boolean[] addedTaken = new boolean[addedNodes.size()];
+        boolean[] removedTaken = new boolean[removedNodes.size()];
+
+        // Pass 1: same leaf name, unique on both sides -> moved
+        Map<String, Integer> addedByName = uniqueIndex(addedNodes, to, SchemaDiff::leafName);
+        Map<String, Integer> removedByName = uniqueIndex(removedNodes, from, SchemaDiff::leafName);
+        for (Map.Entry<String, Integer> e : removedByName.entrySet()) {
+            Integer a = addedByName.get(e.getKey());
+            if (a == null) continue;
+            removedTaken[e.getValue()] = true;
+            addedTaken[a] = true;
+            renamed.add(new Rename(from.key(removedNodes.get(e.getValue())), to.key(addedNodes.get(a))));
+        }
+        // Pass 2: same parent key and same child position -> renamed in place
+        Map<String, Integer> addedBySlot = uniqueIndex(addedNodes, to, SchemaDiff::slot);
+        for (int r = 0; r < removedNodes.size(); r++) {
+            if (removedTaken[r]) continue;
+            Integer a = addedBySlot.get(slot(from, removedNodes.get(r)));
+            if (a == null || addedTaken[a]) continue;
+            removedTaken[r] = true;
+            addedTaken[a] = true;
+            renamed.add(new Rename(from.key(removedNodes.get(r)), to.key(addedNodes.get(a))));
+        }
+
+        List<String> added = new ArrayList<>();
+        for (int i = 0; i < addedNodes.size(); i++) if (!addedTaken[i]) added.add(to.key(addedNodes.get(i)));
+        List<String> removed = new ArrayList<>();
+        for (int i = 0; i < removedNodes.size(); i++) if (!removedTaken[i]) removed.add(from.key(removedNodes.get(i)));
+        return new SchemaDiff(added, removed, renamed, unchanged);
+    }
+
+    /** Leaf keys only in the new version. */
+    public List<String> getAdded() { return added; }
+    /** Leaf keys only in the old version. */
+    public List<String> getRemoved() { return removed; }
+    public List<Rename> getRenamed() { return renamed; }
+    public int getUnchanged() { return unchanged; }
+
+    public boolean isEmpty() { return added.isEmpty() && removed.isEmpty() && renamed.isEmpty(); }
+
+    /** Keys mappings may still point at that no longer exist: removed leaves and rename sources. */
+    public Set<String> goneKeys() {
+        Set<String> keys = new LinkedHashSet<>(removed);
+        for (Rename r : renamed) keys.add(r.from());
+        return keys;
+    }
+
+    /** Keys that appeared in this version: added leaves and rename targets. */
+    public Set<String> newKeys() {
+        Set<String> keys = new LinkedHashSet<>(added);
+        for (Rename r : renamed) keys.add(r.to());
+        return keys;
+    }
+
+    public Map<String, Object> toMap() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("added", added);
+        m.put("removed", removed);
+        List<Map<String, String>> r = new ArrayList<>(renamed.size());
+        for (Rename x : renamed) r.add(Map.of("from", x.from(), "to", x.to()));
+        m.put("renamed", r);
+        m.put("unchanged", unchanged);
+        return m;
+    }
+
+    private static Map<String, Integer> leafIndex(CompactSchemaTree tree) {
+        Map<String, Integer> m = new HashMap<>(tree.leafCount() * 2);
+        for (int n = 0; n < tree.size(); n++) if (tree.isLeaf(n)) m.putIfAbsent(tree.key(n), n);
+        return m;
+    }
+
+    /** Position in nodes (by signature) for signatures that occur exactly once. */
+    private static Map<String, Integer> uniqueIndex(List<Integer> nodes, CompactSchemaTree tree,
+                                                    BiFunction<CompactSchemaTree, Integer, String> signature) {
+        Map<String, Integer> m = new HashMap<>();
+        Set<String> dup = new HashSet<>();
+        for (int i = 0; i < nodes.size(); i++) {
+            String s = signature.apply(tree, nodes.get(i));
+            if (dup.contains(s)) continue;
+            if (m.putIfAbsent(s, i) != null) {
+                m.remove(s);
+                dup.add(s);
+            }
+        }
+        return m;
+    }
+
+    private static String leafName(CompactSchemaTree tree, int node) {
+        String key = tree.key(node);
+        return key.substring(key.lastIndexOf('.') + 1);
+    }
+
+    private static String slot(CompactSchemaTree tree, int node) {
+        int p = tree.parent(node);
+        int index = node - (p >= 0 ? tree.childStart(p) : 0);
+        return (p >= 0 ? tree.key(p) : "") + '\u0000' + index;
+    }
+}
@@ -0,0 +1,328 @@
+package com.mappingstudio.schema;
+
+import java.util.*;
+
+/**
+ * Field search over the leaves of one {@link CompactSchemaTree}: keys and titles are split into lower-case
+ * terms (non-alphanumeric and camelCase boundaries, plus the whole key), stored as a sorted term table with
+ * leaf posting lists. Titles of enclosing groups are indexed as context terms at half weight, so
+ * "subscriber date of birth" finds DMG02 under "Loop 2000B – Subscriber". Query tokens match terms exactly,
+ * by prefix (binary search over the sorted table) or, for tokens of 3+ characters, as a substring via a
+ * trigram index over the terms. A leaf must match every query token; results are ranked
+ * exact &gt; prefix &gt; substring.
+ * <p>
+ * Immutable once built; built alongside the ParsedSchema, so an upload only indexes its own schema.
+ */
+public final class SchemaSearchIndex {
+
+    private static final float EXACT = 3f, PREFIX = 2f, SUBSTRING = 1f, CONTEXT_FACTOR = 0.5f, KEY_EXACT_BONUS = 10f;
+
+    /** A ranked hit: leaf node id in the tree and its score. */
+    public record Hit(int node, float score) {}
+
+    private final CompactSchemaTree tree;
+    /** Leaf ordinal -> node id. */
+    private final int[] leafNodes;
+    /**
+     * Sorted unique terms; postings for term t are postings[termStart[t], termStart[t + 1]), each
+     * (leafOrdinal &lt;&lt; 1 | 1 if the term only comes from an ancestor title), own-term entries first.
+     */
+    private final String[] terms;
+    private final int[] termStart;
+    private final int[] postings;
+    /** Sorted packed trigrams; term ids for trigram g are trigramTerms[trigramStart[g], trigramStart[g + 1]). */
+    private final long[] trigrams;
+    private final int[] trigramStart;
+    private final int[] trigramTerms;
+
+    private SchemaSearchIndex(CompactSchemaTree tree, int[] leafNodes, String[] terms, int[] termStart, int[] postings,
+                              long[] trigrams, int[] trigramStart, int[] trigramTerms) {
+        this.tree = tree;
+        this.leafNodes = leafNodes;
+        this.terms = terms;
+        this.termStart = termStart;
+        this.postings = postings;
+        this.trigrams = trigrams;
+        this.trigramStart = trigramStart;
+        this.trigramTerms = trigramTerms;
+    }
+
+    public static SchemaSearchIndex build(CompactSchemaTree tree) {
+        int n = tree.size();
+        int[] leafNodes = new int[tree.leafCount()];
+        Map<String, List<Integer>> byTerm = new HashMap<>();
+        Map<String, List<Integer>> contextByTerm = new HashMap<>();
+        Set<String> leafTerms = new HashSet<>();
+        Set<String> contextTerms = new HashSet<>();
+        int ord = 0;
+        for (int node = 0; node < n; node++) {
+            if (!tree.isLeaf(node)) continue;
+            leafNodes[ord] = node;
+            leafTerms.clear();
+            contextTerms.clear();
+            String key = tree.key(node).toLowerCase(Locale.ROOT);
+            if (!key.isEmpty()) leafTerms.add(key);
+            tokenize(tree.key(node), leafTerms);
+            tokenize(tree.title(node), leafTerms);
+            for (int a = tree.parent(node); a >= 0; a = tree.parent(a)) tokenize(tree.title(a), contextTerms);
+            contextTerms.removeAll(leafTerms);
+            for (String t : leafTerms) byTerm.computeIfAbsent(t, k -> new ArrayList<>(2)).add(ord << 1);
+            for (String t : contextTerms) contextByTerm.computeIfAbsent(t, k -> new ArrayList<>(2)).add(ord << 1 | 1);
+            ord++;
+        }
+        Set<String> allTerms = new HashSet<>(byTerm.keySet());
+        allTerms.addAll(contextByTerm.keySet());
+        String[] terms = allTerms.toArray(new String[0]);
+        Arrays.sort(terms);
+        int[] termStart = new int[terms.length + 1];
+        int total = 0;
+        for (int t = 0; t < terms.length; t++) {
+            termStart[t] = total;
+            total += byTerm.getOrDefault(terms[t], List.of()).size() + contextByTerm.getOrDefault(terms[t], List.of()).size();
+        }
+        termStart[terms.length] = total;
+        int[] postings = new int[total];
+        for (int t = 0; t < terms.length; t++) {
+            int p = termStart[t];
+            for (int code : byTerm.getOrDefault(terms[t], List.of())) postings[p++] = code;
+            for (int code : contextByTerm.getOrDefault(terms[t], List.of())) postings[p++] = code;
+        }
+
+        Map<Long, List<Integer>> grams = new HashMap<>();
+        for (int t = 0; t < terms.length; t++) {
+            String term = terms[t];
+            Set<Long> seen = new HashSet<>();
+            for (int i = 0; i + 3 <= term.length(); i++) {
+                long g = pack(term, i);
+                if (seen.add(g)) grams.computeIfAbsent(g, k -> new ArrayList<>(2)).add(t);
+            }
+        }
+        long[] trigrams = new long[grams.size()];
+        int gi = 0;
+        for (long g : grams.keySet()) trigrams[gi++] = g;
+        Arrays.sort(trigrams);
+        int[] trigramStart = new int[trigrams.length + 1];
+        total = 0;
+        for (int g = 0; g < trigrams.length; g++) {
+            trigramStart[g] = total;
+            total += grams.get(trigrams[g]).size();
+        }
+        trigramStart[trigrams.length] = total;
+        int[] trigramTerms = new int[total];
+        for (int g = 0; g < trigrams.length; g++) {
+            int p = trigramStart[g];
+            for (int t : grams.get(trigrams[g])) trigramTerms[p++] = t; // ascending: terms were visited in order
+        }
+        return new SchemaSearchIndex(tree, leafNodes, terms, termStart, postings, trigrams, trigramStart, trigramTerms);
+    }
+
+    /** Top-k leaves for the query, best first. Empty query returns nothing. */
+    public List<Hit> search(String query, int limit) {
+        Set<String> tokenSet = new LinkedHashSet<>();
+        tokenize(query, tokenSet);
+        if (tokenSet.isEmpty() || limit <= 0 || leafNodes.length == 0) return List.of();
+        String[] tokens = tokenSet.toArray(new String[0]);
+        // Only leaves hit by the first token can match, so per-query state is sized by those, not by the schema
+        LeafScores acc = new LeafScores();
+
+        for (int ti = 0; ti < tokens.length && ti < Byte.MAX_VALUE; ti++) {
+            String token = tokens[ti];
+            // Terms in priority order so a leaf's first hit for this token is its best
+            for (int[] group : matchingTerms(token)) {
+                float weight = group[0] == 0 ? EXACT : group[0] == 1 ? PREFIX : SUBSTRING;
+                for (int gi = 1; gi < group.length; gi++) {
+                    int t = group[gi];
+                    for (int p = termStart[t]; p < termStart[t + 1]; p++) {
+                        int leaf = postings[p] >>> 1;
+                        int slot = ti == 0 ? acc.slotOrAdd(leaf) : acc.slot(leaf);
+                        if (slot < 0 || acc.matched[slot] != ti) continue; // missed an earlier token, or already scored for this one
+                        acc.matched[slot] = (byte) (ti + 1);
+                        acc.score[slot] += (postings[p] & 1) == 0 ? weight : weight * CONTEXT_FACTOR;
+                    }
+                }
+            }
+            if (ti == 0 && acc.size == 0) return List.of();
+        }
+
+        int needed = Math.min(tokens.length, Byte.MAX_VALUE);
+        String whole = query.trim().toLowerCase(Locale.ROOT);
+        PriorityQueue<Hit> top = new PriorityQueue<>(limit + 1, Comparator.comparingDouble(Hit::score));
+        for (int i = 0; i < acc.size; i++) {
+            int slot = acc.order[i];
+            if (acc.matched[slot] != needed) continue;
+            int node = leafNodes[acc.keys[slot] - 1];
+            float s = acc.score[slot];
+            if (tree.key(node).equalsIgnoreCase(whole)) s += KEY_EXACT_BONUS;
+            // Shorter keys first among equal scores
+            s -= Math.min(tree.key(node).length(), 999) / 1000f;
+            if (top.size() < limit) top.add(new Hit(node, s));
+            else if (s > top.peek().score()) {
+                top.poll();
+                top.add(new Hit(node, s));
+            }
+        }
+        List<Hit> out = new ArrayList<>(top);
+        out.sort(Comparator.comparingDouble(Hit::score).reversed());
+        return out;
+    }
+
+    /**
+     * Per-query score and matched-token count for the candidate leaves: open addressing on leaf ordinal
+     * (stored + 1, 0 = empty slot), grown at half load, with slots kept in insertion order.
+     */
+    private static final class LeafScores {
+        int[] keys = new int[64];
+        float[] score = new float[64];
+        byte[] matched = new byte[64];
+        int[] order = new int[32];
+        int size;
+
+        int slot(int leaf) {
+            int mask = keys.length - 1;
+            for (int i = mix(leaf) & mask; ; i = (i + 1) & mask) {
+                if (keys[i] == leaf + 1) return i;
+                if (keys[i] == 0) return -1;
+            }
+        }
+
+        int slotOrAdd(int leaf) {
+            if (size * 2 >= keys.length) grow();
+            int mask = keys.length - 1;
+            int i = mix(leaf) & mask;
+            while (keys[i] != 0) {
+                if (keys[i] == leaf + 1) return i;
+                i = (i + 1) & mask;
+            }
+            keys[i] = leaf + 1;
+            if (size == order.length) order = Arrays.copyOf(order, size * 2);
+            order[size++] = i;
+            return i;
+        }
+
+        private void grow() {
+            int[] oldKeys = keys;
+            float[] oldScore = score;
+            byte[] oldMatched = matched;
+            int[] oldOrder = order;
+            keys = new int[oldKeys.length * 2];
+            score = new float[keys.length];
+            matched = new byte[keys.length];
+            order = new int[keys.length / 2];
+            int n = size;
+            size = 0;
+            int mask = keys.length - 1;
+            for (int k = 0; k < n; k++) {
+                int from = oldOrder[k];
+                int i = mix(oldKeys[from] - 1) & mask;
+                while (keys[i] != 0) i = (i + 1) & mask;
+                keys[i] = oldKeys[from];
+                score[i] = oldScore[from];
+                matched[i] = oldMatched[from];
+                order[size++] = i;
+            }
+        }
+
+        private static int mix(int x) {
+            x *= 0x9E3779B9;
+            return x ^ (x >>> 16);
+        }
+    }
+
+    /** Key path from the top level down to node. */
+    public List<String> path(int node) {
+        List<String> path = new ArrayList<>();
+        for (int n = node; n >= 0; n = tree.parent(n)) path.add(tree.key(n));
+        Collections.reverse(path);
+        return path;
+    }
+
+    /** [kind, termIds...] groups: kind 0 = exact, 1 = prefix, 2 = substring (tokens of 3+ chars). */
+    private List<int[]> matchingTerms(String token) {
+        List<int[]> groups = new ArrayList<>(3);
+        int lo = lowerBound(token);
+        int exact = lo < terms.length && terms[lo].equals(token) ? lo : -1;
+        if (exact >= 0) groups.add(new int[] { 0, exact });
+        int end = lo;
+        while (end < terms.length && terms[end].startsWith(token)) end++;
+        int prefixStart = exact >= 0 ? lo + 1 : lo;
+        if (end > prefixStart) {
+            int[] g = new int[1 + end - prefixStart];
+            g[0] = 1;
+            for (int t = prefixStart; t < end; t++) g[1 + t - prefixStart] = t;
+            groups.add(g);
+        }
+        if (token.length() >= 3) {
+            int[] sub = substringTerms(token, lo, end);
+            if (sub.length > 1) groups.add(sub);
+        }
+        return groups;
+    }
+
+    /** Terms containing token (not as a prefix): intersect trigram postings, then verify. */
+    private int[] substringTerms(String token, int prefixFrom, int prefixTo) {
+        int[] acc = null;
+        for (int i = 0; i + 3 <= token.length(); i++) {
+            int g = Arrays.binarySearch(trigrams, pack(token, i));
+            if (g < 0) return new int[] { 2 };
+            int from = trigramStart[g], to = trigramStart[g + 1];
+            if (acc == null) {
+                acc = Arrays.copyOfRange(trigramTerms, from, to);
+            } else {
+                int w = 0;
+                for (int t : acc) {
+                    if (Arrays.binarySearch(trigramTerms, from, to, t) >= 0) acc[w++] = t;
+                }
+                acc = Arrays.copyOf(acc, w);
+            }
+            if (acc.length == 0) return new int[] { 2 };
+        }
+        int[] out = new int[acc.length + 1];
+        out[0] = 2;
+        int w = 1;
+        for (int t : acc) {
+            if (t >= prefixFrom && t < prefixTo) continue; // already a prefix match
+            if (terms[t].contains(token)) out[w++] = t;
+        }
+        return Arrays.copyOf(out, w);
+    }
+
+    private int lowerBound(String token) {
+        int lo = 0, hi = terms.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (terms[mid].compareTo(token) < 0) lo = mid + 1; else hi = mid;
+        }
+        return lo;
+    }
+
+    private static long pack(String s, int i) {
+        return ((long) s.charAt(i) << 32) | ((long) s.charAt(i + 1) << 16) | s.charAt(i + 2);
+    }
+
+    /** Lower-case alphanumeric runs, also split at camelCase boundaries ("dateOfBirth" -> date, of, birth). */
+    static void tokenize(String text, Collection<String> out) {
+        if (text == null) return;
+        StringBuilder cur = new StringBuilder();
+        char prev = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (!Character.isLetterOrDigit(c)) {
+                flush(cur, out);
+                prev = 0;
+                continue;
+            }
+            boolean boundary = prev != 0 && Character.isUpperCase(c) && Character.isLowerCase(prev);
+            if (boundary) flush(cur, out);
+            cur.append(Character.toLowerCase(c));
+            prev = c;
+        }
+        flush(cur, out);
+    }
+
+    private static void flush(StringBuilder cur, Collection<String> out) {
+        if (cur.length() > 0) {
+            out.add(cur.toString());
+            cur.setLength(0);
+        }
+    }
+}
@@ -1,7 +1,6 @@
 package com.mappingstudio.schema;
 
-import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mappingstudio.edi.EdiSchemaCatalog;
 import com.mappingstudio.edi.EdiSchemaRegistry;
 import com.mappingstudio.model.CustomSchemaEntity;
 import com.mappingstudio.repository.CustomSchemaRepository;
@@ -11,33 +10,30 @@ import java.util.*;
 
 /**
  * Unified schema list and load: EDI (from classpath) + custom (uploaded).
- * IDs: EDI use key (834_5010, 837P_5010); custom use "custom-{id}".
+ * IDs: EDI use catalog key (834_5010, 837P_5010, ...); custom use "custom-{id}".
  */
 @Service
 public class SchemaService {
 
-    private static final ObjectMapper MAPPER = new ObjectMapper();
-    private static final Map<String, String> EDI_KEY_TO_NAME = Map.of(
-        "834_5010", "EDI 834 v5010",
-        "837P_5010", "EDI 837P"
-    );
-
     private final EdiSchemaRegistry ediRegistry;
     private final CustomSchemaRepository customRepo;
+    private final SchemaCache schemaCache;
 
-    public SchemaService(EdiSchemaRegistry ediRegistry, CustomSchemaRepository customRepo) {
+    public SchemaService(EdiSchemaRegistry ediRegistry, CustomSchemaRepository customRepo, SchemaCache schemaCache) {
         this.ediRegistry = ediRegistry;
         this.customRepo = customRepo;
+        this.schemaCache = schemaCache;
     }
 
     /** List all schemas: EDI + custom. Each item: { id, name, kind }. */
     public List<Map<String, String>> listAll() {
         List<Map<String, String>> out = new ArrayList<>();
-        for (String key : List.of("834_5010", "837P_5010")) {
+        for (EdiSchemaCatalog.Manifest edi : ediRegistry.listManifests()) {
             Map<String, String> m = new LinkedHashMap<>();
-            m.put("id", key);
-            m.put("name", EDI_KEY_TO_NAME.get(key));
+            m.put("id", edi.key());
+            m.put("name", edi.name());
             m.put("kind", "edi");
+            if (edi.version() != null) m.put("version", edi.version());
             out.add(m);
         }
         for (CustomSchemaEntity e : customRepo.findAllByOrderByCreatedAtDesc()) {
@@ -54,20 +50,20 @@ public class SchemaService {
     /**
      * Load schema by id (EDI key or "custom-{id}").
      * Returns map with "tree", "name", and optionally "description", "type".
+     * The map is the cached, unmodifiable document; callers must not mutate it.
      */
     public Map<String, Object> loadById(String id) throws Exception {
+        return getParsed(id).getDocument();
+    }
+
+    /** Parsed schema by id (EDI key or "custom-{id}"). */
+    public ParsedSchema getParsed(String id) throws Exception {
         if (id == null || id.isBlank()) throw new IllegalArgumentException("Schema id required");
         if (id.startsWith("custom-")) {
             long pk = Long.parseLong(id.substring(7));
-            CustomSchemaEntity e = customRepo.findById(pk).orElseThrow(() -> new IllegalArgumentException("Schema not found: " + id));
-            Map<String, Object> map = new LinkedHashMap<>();
-            map.put("name", e.getName());
-            map.put("type", e.getType());
-            List<Map<String, Object>> tree = MAPPER.readValue(e.getTreeJson(), new TypeReference<>() {});
-            map.put("tree", tree);
-            return map;
+            return schemaCache.getById(pk).orElseThrow(() -> new IllegalArgumentException("Schema not found: " + id));
         }
-        return ediRegistry.loadSchema(id);
+        return ediRegistry.getParsed(id);
     }
 
     /**
@@ -75,33 +71,9 @@ public class SchemaService {
      */
     public int getTargetSchemaLeafCount(String displayName) {
         if (displayName == null) return 1;
-        if (EDI_KEY_TO_NAME.containsValue(displayName)) {
-            String key = null;
-            for (Map.Entry<String, String> e : EDI_KEY_TO_NAME.entrySet()) {
-                if (e.getValue().equals(displayName)) { key = e.getKey(); break; }
-            }
-            if (key != null) return ediRegistry.getTargetSchemaLeafCount(displayName);
-        }
-        Optional<CustomSchemaEntity> custom = customRepo.findByName(displayName);
-        if (custom.isPresent()) {
-            try {
-                List<Map<String, Object>> tree = MAPPER.readValue(custom.get().getTreeJson(), new TypeReference<>() {});
-                return countLeavesInTree(tree);
-            } catch (Exception e) {
-                return 1;
-            }
-        }
+        if (ediRegistry.keyForName(displayName).isPresent()) return ediRegistry.getTargetSchemaLeafCount(displayName);
+        Optional<Integer> custom = schemaCache.leafCount(displayName);
+        if (custom.isPresent()) return custom.get();
         return ediRegistry.getTargetSchemaLeafCount(displayName);
     }
-
-    @SuppressWarnings("unchecked")
-    private int countLeavesInTree(List<Map<String, Object>> nodes) {
-        int count = 0;
-        for (Map<String, Object> node : nodes) {
-            if (Boolean.TRUE.equals(node.get("isLeaf"))) count++;
-            Object children = node.get("children");
-            if (children instanceof List) count += countLeavesInTree((List<Map<String, Object>>) children);
-        }
-        return count;
-    }
 }
@@ -0,0 +1,24 @@
+package com.mappingstudio.schema;
+
+import com.mappingstudio.model.CustomSchemaEntity;
+
+/** Tree statistics persisted on custom schema rows (see CustomSchemaEntity). */
+public record SchemaStats(int leafCount, int nodeCount, int maxDepth, String keyFingerprint) {
+
+    public static SchemaStats of(CompactSchemaTree tree) {
+        return new SchemaStats(tree.leafCount(), tree.size(), tree.maxDepth(), tree.keyFingerprint());
+    }
+
+    /** Stats already stored on the row, or null if it predates them. */
+    public static SchemaStats of(CustomSchemaEntity e) {
+        if (e.getLeafCount() == null || e.getNodeCount() == null || e.getMaxDepth() == null) return null;
+        return new SchemaStats(e.getLeafCount(), e.getNodeCount(), e.getMaxDepth(), e.getKeyFingerprint());
+    }
+
+    public void applyTo(CustomSchemaEntity e) {
+        e.setLeafCount(leafCount);
+        e.setNodeCount(nodeCount);
+        e.setMaxDepth(maxDepth);
+        e.setKeyFingerprint(keyFingerprint);
+    }
+}
@@ -0,0 +1,238 @@
+package com.mappingstudio.schema;
+
+import com.mappingstudio.model.CustomSchemaEntity;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Asynchronous schema uploads. The request thread only copies the upload to a temp file and enqueues a job;
+ * parsing and saving run on a small bounded pool so heavy imports never hold Tomcat threads. When the queue
+ * is full, {@link #submit} throws {@link RejectedExecutionException} (mapped to 429 by the controller).
+ * Finished jobs are kept for {@code app.schema.upload-job-retention-minutes} so clients can poll the result.
+ */
+@Service
+public class SchemaUploadJobs {
+
+    private static final Logger log = LoggerFactory.getLogger(SchemaUploadJobs.class);
+
+    public enum Status { QUEUED, RUNNING, DONE, FAILED }
+
+    /** One upload job; fields are written by the worker and read by pollers. */
+    public static final class Job {
+        private final String id = UUID.randomUUID().toString();
+        private final String fileName;
+        private final long size;
+        private final Instant createdAt = Instant.now();
+        private final AtomicLong bytesRead = new AtomicLong();
+        /** Reads of the temp file so far: 1 = hashing, 2 = parsing (duplicates finish after the hash). */
+        private final AtomicInteger pass = new AtomicInteger();
+        private volatile Status status = Status.QUEUED;
+        private volatile Instant startedAt;
+        private volatile Instant finishedAt;
+        private volatile CustomSchemaEntity result;
+        private volatile String error;
+
+        private Job(String fileName, long size) {
+            this.fileName = fileName;
+            this.size = size;
+        }
+
+        public String getId() { return id; }
+        public Status getStatus() { return status; }
+        public CustomSchemaEntity getResult() { return result; }
+
+        /**
+         * Status document for GET /api/schemas/jobs/{id}. bytesRead and phaseProgress are for the current
+         * phase (hashing, then parsing); progress weighs each phase as half of the job so it never goes back.
+         */
+        public Map<String, Object> toMap() {
+            Map<String, Object> m = new LinkedHashMap<>();
+            int p = pass.get();
+            double phase = size > 0 ? Math.min(1.0, (double) bytesRead.get() / size) : 0.0;
+            m.put("jobId", id);
+            m.put("status", status.name().toLowerCase(Locale.ROOT));
+            m.put("fileName", fileName);
+            m.put("size", size);
+            if (status == Status.RUNNING) m.put("phase", p <= 1 ? "hashing" : "parsing");
+            m.put("bytesRead", bytesRead.get());
+            m.put("phaseProgress", phase);
+            m.put("progress", status == Status.DONE ? 1.0 : p == 0 ? 0.0 : 0.5 * (Math.min(p, 2) - 1) + 0.5 * phase);
+            m.put("createdAt", createdAt.toString());
+            if (startedAt != null) m.put("startedAt", startedAt.toString());
+            if (finishedAt != null) m.put("finishedAt", finishedAt.toString());
+            CustomSchemaEntity r = result;
+            if (r != null) {
+                Map<String, Object> res = new LinkedHashMap<>();
+                res.put("id", "custom-" + r.getId());
+                res.put("name", r.getName());
+                m.put("result", res);
+            }
+            if (error != null) m.put("error", error);
+            return m;
+        }
+    }
+
+    private final SchemaUploadService uploadService;
+    private final ThreadPoolExecutor executor;
+    private final Duration retention;
+    private final Map<String, Job> jobs = new ConcurrentHashMap<>();
+
+    public SchemaUploadJobs(SchemaUploadService uploadService,
+                            @Value("${app.schema.upload-workers:2}") int workers,
+                            @Value("${app.schema.upload-queue-capacity:8}") int queueCapacity,
+                            @Value("${app.schema.upload-job-retention-minutes:60}") long retentionMinutes) {
+        this.uploadService = uploadService;
+        int threads = Math.max(1, workers);
+        AtomicInteger seq = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(Math.max(1, queueCapacity)),
+            r -> {
+                Thread t = new Thread(r, "schema-upload-" + seq.incrementAndGet());
+                t.setDaemon(true);
+                t.setPriority(Thread.NORM_PRIORITY - 1);
+                return t;
+            },
+            new ThreadPoolExecutor.AbortPolicy());
+        this.retention = Duration.ofMinutes(Math.max(1, retentionMinutes));
+    }
+
+    /**
+     * Copy the upload to a temp file (the multipart part is gone once the request ends) and enqueue parsing.
+     * @throws RejectedExecutionException when all workers are busy and the queue is full
+     */
+    public Job submit(MultipartFile file, String type, String displayName) throws IOException {
+        if (file == null || file.isEmpty())
+            throw new IllegalArgumentException("No file provided");
+        purgeExpired();
+        // Cheap early check so a saturated pool does not first copy a large file for nothing
+        if (executor.getQueue().remainingCapacity() == 0)
+            throw new RejectedExecutionException("Schema upload queue is full");
+        Path tmp = Files.createTempFile("schema-upload-", ".tmp");
+        try {
+            file.transferTo(tmp);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(tmp);
+            throw e;
+        }
+        String originalName = file.getOriginalFilename();
+        Job job = new Job(originalName, Files.size(tmp));
+        jobs.put(job.id, job);
+        try {
+            executor.execute(new UploadTask(job, tmp, () -> run(job, tmp, originalName, type, displayName)));
+        } catch (RejectedExecutionException e) {
+            jobs.remove(job.id);
+            Files.deleteIfExists(tmp);
+            throw e;
+        }
+        return job;
+    }
+
+    public Optional<Job> get(String id) {
+        purgeExpired();
+        return Optional.ofNullable(id != null ? jobs.get(id) : null);
+    }
+
+    private void run(Job job, Path tmp, String originalName, String type, String displayName) {
+        job.startedAt = Instant.now();
+        job.status = Status.RUNNING;
+        try {
+            job.result = uploadService.upload(
+                () -> {
+                    // Opened once to hash and, unless the content is a duplicate, once more to parse
+                    job.bytesRead.set(0);
+                    job.pass.incrementAndGet();
+                    return new CountingInputStream(Files.newInputStream(tmp), job.bytesRead);
+                },
+                job.size, originalName, type, displayName);
+            job.finishedAt = Instant.now();
+            job.status = Status.DONE;
+        } catch (Exception e) {
+            job.error = e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+            job.finishedAt = Instant.now();
+            job.status = Status.FAILED;
+            if (!(e instanceof IllegalArgumentException)) log.warn("Schema upload job {} failed", job.id, e);
+        } finally {
+            deleteTemp(tmp);
+        }
+    }
+
+    private static void deleteTemp(Path tmp) {
+        try {
+            Files.deleteIfExists(tmp);
+        } catch (IOException e) {
+            log.warn("Could not delete temp upload {}", tmp);
+        }
+    }
+
+    private void purgeExpired() {
+        Instant cutoff = Instant.now().minus(retention);
+        jobs.values().removeIf(j -> j.finishedAt != null && j.finishedAt.isBefore(cutoff));
+    }
+
+    /** Queued jobs never start: fail them and delete their temp copies (running jobs clean up themselves). */
+    @PreDestroy
+    public void shutdown() {
+        for (Runnable r : executor.shutdownNow()) {
+            if (!(r instanceof UploadTask task)) continue;
+            task.job.error = "Server shut down before the upload was processed";
+            task.job.finishedAt = Instant.now();
+            task.job.status = Status.FAILED;
+            deleteTemp(task.tmp);
+        }
+    }
+
+    /** Queue entry that keeps its job and temp file reachable for {@link #shutdown}. */
+    private record UploadTask(Job job, Path tmp, Runnable body) implements Runnable {
+        @Override
+        public void run() {
+            body.run();
+        }
+    }
+
+    /** Counts bytes consumed by the parser for job progress. */
+    private static final class CountingInputStream extends FilterInputStream {
+        private final AtomicLong count;
+
+        CountingInputStream(InputStream in, AtomicLong count) {
+            super(in);
+            this.count = count;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) count.incrementAndGet();
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) count.addAndGet(n);
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            if (skipped > 0) count.addAndGet(skipped);
+            return skipped;
+        }
+    }
+}
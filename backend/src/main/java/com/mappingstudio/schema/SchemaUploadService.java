@@ -1,33 +1,56 @@
 package com.mappingstudio.schema;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.mappingstudio.model.CustomSchemaEntity;
 import com.mappingstudio.repository.CustomSchemaRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.InputStreamSource;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
-import java.io.ByteArrayInputStream;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
 import java.util.List;
-import java.util.Map;
+import java.util.Optional;
 
 /**
  * Upload and parse non-EDI schemas (JSON sample, XSD, CSV sample, Excel spec)
  * and persist as custom schema with generated tree for the mapping UI.
+ * Uploads are deduplicated by content hash: identical content is parsed and stored once. A new upload
+ * under an existing name becomes the next version of that schema (see SchemaVersionService).
  */
 @Service
 public class SchemaUploadService {
 
-    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final Logger log = LoggerFactory.getLogger(SchemaUploadService.class);
+
     private static final long DEFAULT_MAX_SCHEMA_BYTES = 2 * 1024 * 1024; // 2 MB
+    private static final long DEFAULT_MAX_SAMPLE_BYTES = 1024L * 1024 * 1024; // 1 GB
+    /** Bytes peeked from the upload to detect XML content without reading the whole file. */
+    private static final int PEEK_BYTES = 64;
 
     private final CustomSchemaRepository repo;
+    private final SchemaCache schemaCache;
+    private final SchemaVersionService versionService;
     private final long maxSchemaBytes;
+    private final long maxSampleBytes;
 
     public SchemaUploadService(CustomSchemaRepository repo,
-                               @Value("${app.schema.max-file-size-bytes:" + DEFAULT_MAX_SCHEMA_BYTES + "}") long maxSchemaBytes) {
+                               SchemaCache schemaCache,
+                               SchemaVersionService versionService,
+                               @Value("${app.schema.max-file-size-bytes:" + DEFAULT_MAX_SCHEMA_BYTES + "}") long maxSchemaBytes,
+                               @Value("${app.schema.max-sample-file-size-bytes:" + DEFAULT_MAX_SAMPLE_BYTES + "}") long maxSampleBytes) {
         this.repo = repo;
+        this.schemaCache = schemaCache;
+        this.versionService = versionService;
         this.maxSchemaBytes = maxSchemaBytes > 0 ? maxSchemaBytes : DEFAULT_MAX_SCHEMA_BYTES;
+        this.maxSampleBytes = maxSampleBytes > 0 ? maxSampleBytes : DEFAULT_MAX_SAMPLE_BYTES;
     }
 
     /**
@@ -35,35 +58,76 @@ public class SchemaUploadService {
      * @param file uploaded file
      * @param type json_sample, xsd, csv_sample, excel_spec
      * @param displayName optional name (default from filename)
-     * @return saved entity with id, name, treeJson
+     * @return saved entity with id, name, treeBin
      */
     public CustomSchemaEntity upload(MultipartFile file, String type, String displayName) throws Exception {
         if (file == null || file.isEmpty())
             throw new IllegalArgumentException("No file provided");
-        long size = file.getSize();
-        if (size < 0 || size > maxSchemaBytes)
-            throw new IllegalArgumentException("Schema file size exceeds allowed limit");
+        return upload(file, file.getSize(), file.getOriginalFilename(), type, displayName);
+    }
+
+    /**
+     * Same as {@link #upload(MultipartFile, String, String)} for content that is not a live multipart part
+     * (e.g. the temp copy an async upload job reads from).
+     * @param source opened once; the stream is read sequentially by the parser
+     * @param size content length in bytes, checked against the per-type limit
+     * @param originalFilename used for the default display name
+     */
+    public CustomSchemaEntity upload(InputStreamSource source, long size, String originalFilename,
+                                     String type, String displayName) throws Exception {
+        if (source == null || size == 0)
+            throw new IllegalArgumentException("No file provided");
         String name = displayName != null && !displayName.isBlank()
             ? displayName.trim()
-            : file.getOriginalFilename() != null ? file.getOriginalFilename().replaceAll("\\.[^.]+$", "") : "Custom Schema";
+            : originalFilename != null ? originalFilename.replaceAll("\\.[^.]+$", "") : "Custom Schema";
         if (name.length() > 200) name = name.substring(0, 200);
 
-        // Read file bytes once so parsers get exact upload content (avoids stream encoding/consumption issues)
-        byte[] bytes = file.getBytes();
-        if (bytes == null || bytes.length == 0)
-            throw new IllegalArgumentException("File content is empty");
-        // If content looks like XML/XSD, use XSD parser (fixes wrong type selected in UI e.g. JSON when file is .xsd)
         String typeNorm = type != null ? type.toLowerCase().trim() : "";
-        if (looksLikeXml(bytes))
-            typeNorm = "xsd";
-        List<Map<String, Object>> tree;
+        String contentHash;
+        CompactSchemaTree tree = null;
+        SchemaStats stats;
+        Optional<CustomSchemaEntity> latest;
+        // Parsers read the upload as a stream (multipart content is spooled to disk by the container), so
+        // large JSON/CSV samples are never held in memory as a whole
         try {
-            switch (typeNorm) {
-                case "json_sample" -> tree = SchemaTreeBuilders.fromJsonSample(new ByteArrayInputStream(bytes));
-                case "xsd" -> tree = SchemaTreeBuilders.fromXsd(new ByteArrayInputStream(bytes));
-                case "csv_sample" -> tree = SchemaTreeBuilders.fromCsvSample(new ByteArrayInputStream(bytes));
-                case "excel_spec" -> tree = SchemaTreeBuilders.fromExcelSpec(new ByteArrayInputStream(bytes));
-                default -> throw new IllegalArgumentException("Unsupported schema type: " + type);
+            try (InputStream in = new BufferedInputStream(source.getInputStream())) {
+                in.mark(PEEK_BYTES);
+                byte[] head = in.readNBytes(PEEK_BYTES);
+                in.reset();
+                if (head.length == 0)
+                    throw new IllegalArgumentException("File content is empty");
+                // If content looks like XML/XSD, use XSD parser (fixes wrong type selected in UI e.g. JSON when file is .xsd)
+                if (looksLikeXml(head))
+                    typeNorm = "xsd";
+                if (!List.of("json_sample", "xsd", "csv_sample", "excel_spec").contains(typeNorm))
+                    throw new IllegalArgumentException("Unsupported schema type: " + type);
+                long limit = "json_sample".equals(typeNorm) || "csv_sample".equals(typeNorm) ? maxSampleBytes : maxSchemaBytes;
+                if (size < 0 || size > limit)
+                    throw new IllegalArgumentException("Schema file size exceeds allowed limit");
+                contentHash = contentHash(in, typeNorm);
+            }
+
+            // Same content re-uploaded under the same name (and still the current version): nothing to do
+            latest = repo.findFirstByNameOrderByIdDesc(name);
+            if (latest.isPresent() && contentHash.equals(latest.get().getContentHash())) {
+                schemaCache.put(latest.get());
+                return latest.get();
+            }
+            // Same content under another name: share the canonical row's tree instead of parsing again
+            Optional<CustomSchemaEntity> canonical = repo.findFirstByContentHashAndTreeBinIsNotNullOrderByIdAsc(contentHash);
+            if (canonical.isPresent()) {
+                stats = SchemaStats.of(canonical.get());
+                if (stats == null) stats = SchemaStats.of(SchemaCache.readTree(canonical.get()));
+            } else {
+                try (InputStream in = new BufferedInputStream(source.getInputStream())) {
+                    tree = switch (typeNorm) {
+                        case "json_sample" -> SchemaTreeBuilders.fromJsonSample(in);
+                        case "xsd" -> SchemaTreeBuilders.fromXsd(in);
+                        case "csv_sample" -> SchemaTreeBuilders.fromCsvSample(in);
+                        default -> SchemaTreeBuilders.fromExcelSpec(in);
+                    };
+                }
+                stats = SchemaStats.of(tree);
             }
         } catch (IllegalArgumentException e) {
             throw e;
@@ -72,12 +136,81 @@ public class SchemaUploadService {
             throw new IllegalArgumentException("Failed to parse schema file: " + msg, e);
         }
 
-        String treeJson = MAPPER.writeValueAsString(tree);
         CustomSchemaEntity entity = new CustomSchemaEntity();
         entity.setName(name);
-        entity.setType(typeNorm.isEmpty() ? "json_sample" : typeNorm);
-        entity.setTreeJson(treeJson);
-        return repo.save(entity);
+        entity.setType(typeNorm);
+        entity.setContentHash(contentHash);
+        entity.setTreeBin(tree != null ? tree.toBytes() : null);
+        stats.applyTo(entity);
+        entity.setPreviousVersionId(latest.map(CustomSchemaEntity::getId).orElse(null));
+        CustomSchemaEntity saved = repo.save(entity);
+        // Replace any cached entry for this id/name so readers see the new tree immediately
+        schemaCache.put(saved);
+        if (latest.isPresent()) {
+            try {
+                versionService.applyNewVersion(latest.get(), saved);
+            } catch (RuntimeException e) {
+                // The upload itself succeeded; flags are refreshed on the next version
+                log.warn("Could not diff schema {} against previous version {}", saved.getId(), latest.get().getId(), e);
+            }
+        }
+        return saved;
+    }
+
+    /**
+     * SHA-256 (hex) over the schema type and the upload bytes. Text formats are normalized first (UTF-8 BOM
+     * dropped, CRLF and CR line ends read as LF) so the same file saved on another OS still matches.
+     * CSV samples are hashed only up to the end of the records the profiler reads (header plus
+     * CSV_SAMPLE_ROWS, blank lines not counted, line breaks inside quotes not ending a record): two samples
+     * that agree there produce the same tree, and a multi-GB extract is not read to the end just for the hash.
+     */
+    private static String contentHash(InputStream in, String typeNorm) throws IOException {
+        MessageDigest md;
+        try {
+            md = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        md.update(typeNorm.getBytes(StandardCharsets.UTF_8));
+        md.update((byte) 0);
+        boolean text = !"excel_spec".equals(typeNorm);
+        int recordsLeft = "csv_sample".equals(typeNorm) ? SchemaTreeBuilders.CSV_SAMPLE_ROWS + 1 : -1;
+        byte[] buf = new byte[64 * 1024];
+        byte[] out = new byte[buf.length];
+        boolean first = true, pendingCr = false, quoted = false, inRecord = false;
+        int n;
+        while (recordsLeft != 0 && (n = in.read(buf)) > 0) {
+            if (!text) {
+                md.update(buf, 0, n);
+                continue;
+            }
+            int i = 0;
+            if (first && n >= 3 && buf[0] == (byte) 0xEF && buf[1] == (byte) 0xBB && buf[2] == (byte) 0xBF) i = 3;
+            first = false;
+            int w = 0;
+            for (; i < n; i++) {
+                byte b = buf[i];
+                if (pendingCr) {
+                    pendingCr = false;
+                    if (b == '\n') continue; // CRLF: LF already written for the CR
+                }
+                if (b == '\r') {
+                    pendingCr = true;
+                    b = '\n';
+                }
+                out[w++] = b;
+                if (recordsLeft < 0) continue;
+                if (b == '"') quoted = !quoted;
+                if (b != '\n') {
+                    inRecord = true;
+                } else if (!quoted && inRecord) {
+                    inRecord = false;
+                    if (--recordsLeft == 0) break;
+                }
+            }
+            md.update(out, 0, w);
+        }
+        return HexFormat.of().formatHex(md.digest());
     }
 
     /** True if content starts with <?xml or < (after optional BOM/whitespace). */
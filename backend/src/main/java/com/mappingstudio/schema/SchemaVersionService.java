@@ -0,0 +1,149 @@
+package com.mappingstudio.schema;
+
+import com.mappingstudio.mapping.CoverageCounters;
+import com.mappingstudio.mapping.MappingChangeLog;
+import com.mappingstudio.model.CustomSchemaEntity;
+import com.mappingstudio.model.ProjectEntity;
+import com.mappingstudio.repository.CustomSchemaRepository;
+import com.mappingstudio.repository.MappingRepository;
+import com.mappingstudio.repository.ProjectRepository;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.*;
+
+/**
+ * Versions of custom schemas (uploads with the same name, linked by previousVersionId). When a new version
+ * arrives, only the leaves that changed are looked at: mappings of projects using the schema are flagged
+ * orphaned with targeted updates on the gone keys (and unflagged on keys that came back), instead of
+ * rescanning every mapping of every project.
+ */
+@Service
+public class SchemaVersionService {
+
+    /** Keys per IN (...) list, well under SQLite's bound-parameter limit. */
+    private static final int IN_CHUNK = 500;
+
+    private final CustomSchemaRepository customRepo;
+    private final ProjectRepository projectRepo;
+    private final MappingRepository mappingRepo;
+    private final SchemaCache schemaCache;
+    private final CoverageCounters coverageCounters;
+    private final MappingChangeLog changeLog;
+
+    public SchemaVersionService(CustomSchemaRepository customRepo, ProjectRepository projectRepo,
+                                MappingRepository mappingRepo, SchemaCache schemaCache,
+                                CoverageCounters coverageCounters, MappingChangeLog changeLog) {
+        this.customRepo = customRepo;
+        this.projectRepo = projectRepo;
+        this.mappingRepo = mappingRepo;
+        this.schemaCache = schemaCache;
+        this.coverageCounters = coverageCounters;
+        this.changeLog = changeLog;
+    }
+
+    /**
+     * Diff a new version against the one it replaced and update the orphaned flag on affected mappings.
+     * @return number of mappings whose flag was set or cleared
+     */
+    @Transactional
+    public int applyNewVersion(CustomSchemaEntity previous, CustomSchemaEntity current) {
+        SchemaDiff diff = SchemaDiff.compute(tree(previous.getId()), tree(current.getId()));
+        if (diff.isEmpty()) return 0;
+        String name = current.getName();
+        List<Long> targetProjects = ids(projectRepo.findByTargetSchema(name));
+        List<Long> sourceProjects = ids(projectRepo.findBySourceSchema(name));
+        List<String> gone = new ArrayList<>(diff.goneKeys());
+        List<String> back = new ArrayList<>(diff.newKeys());
+        int changed = 0;
+        // Flagged mappings stop counting toward coverage; each chunk's flag changes are counted just before the update
+        CoverageCounters.Batch counters = coverageCounters.batch();
+        // Per project, so flagged rows carry that project's change version for delta sync
+        for (Long p : targetProjects) {
+            long version = changeLog.bulkChange(p);
+            for (List<String> keys : chunks(gone)) {
+                counters.orphaned(p, mappingRepo.countTargetFlagChanges(p, keys, true), true);
+                changed += mappingRepo.markTargetOrphaned(p, keys, true, version);
+            }
+            for (List<String> keys : chunks(back)) {
+                counters.orphaned(p, mappingRepo.countTargetFlagChanges(p, keys, false), false);
+                changed += mappingRepo.markTargetOrphaned(p, keys, false, version);
+            }
+        }
+        for (Long p : sourceProjects) {
+            long version = changeLog.bulkChange(p);
+            for (List<String> keys : chunks(gone)) {
+                counters.orphaned(p, mappingRepo.countSourceFlagChanges(p, keys, true), true);
+                changed += mappingRepo.markSourceOrphaned(p, keys, true, version);
+            }
+            for (List<String> keys : chunks(back)) {
+                counters.orphaned(p, mappingRepo.countSourceFlagChanges(p, keys, false), false);
+                changed += mappingRepo.markSourceOrphaned(p, keys, false, version);
+            }
+        }
+        counters.apply();
+        return changed;
+    }
+
+    /**
+     * Diff between two custom schema versions plus, for projects using the schema, their orphaned mapping
+     * count and coverage against the newer version.
+     * @param fromId older version; null for the version toId replaced
+     */
+    @Transactional(readOnly = true)
+    public Map<String, Object> diff(Long fromId, long toId) {
+        CustomSchemaEntity to = customRepo.findById(toId)
+            .orElseThrow(() -> new IllegalArgumentException("Schema not found: custom-" + toId));
+        Long from = fromId != null ? fromId : to.getPreviousVersionId();
+        if (from == null) throw new IllegalArgumentException("Schema custom-" + toId + " has no previous version");
+        SchemaDiff diff = SchemaDiff.compute(tree(from), tree(toId));
+
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("from", "custom-" + from);
+        out.put("to", "custom-" + toId);
+        out.putAll(diff.toMap());
+
+        Map<Long, ProjectEntity> projects = new LinkedHashMap<>();
+        for (ProjectEntity p : projectRepo.findByTargetSchema(to.getName())) projects.put(p.getId(), p);
+        for (ProjectEntity p : projectRepo.findBySourceSchema(to.getName())) projects.putIfAbsent(p.getId(), p);
+        Map<Long, Long> orphaned = new HashMap<>();
+        if (!projects.isEmpty()) {
+            for (Object[] row : mappingRepo.countOrphanedByProject(projects.keySet())) {
+                orphaned.put((Long) row[0], (Long) row[1]);
+            }
+        }
+        int leaves = to.getLeafCount() != null ? to.getLeafCount()
+            : schemaCache.getById(toId).map(ParsedSchema::getLeafCount).orElse(0);
+        List<Map<String, Object>> affected = new ArrayList<>();
+        for (ProjectEntity p : projects.values()) {
+            Map<String, Object> m = new LinkedHashMap<>();
+            m.put("id", p.getId());
+            m.put("name", p.getName());
+            m.put("orphanedMappings", orphaned.getOrDefault(p.getId(), 0L));
+            if (to.getName().equals(p.getTargetSchema())) {
+                m.put("coverage", Coverage.percent(coverageCounters.distinctTargets(p.getId()), leaves));
+            }
+            affected.add(m);
+        }
+        out.put("projects", affected);
+        return out;
+    }
+
+    private CompactSchemaTree tree(long id) {
+        return schemaCache.getById(id)
+            .orElseThrow(() -> new IllegalArgumentException("Schema not found: custom-" + id))
+            .getTree();
+    }
+
+    private static List<Long> ids(List<ProjectEntity> projects) {
+        List<Long> ids = new ArrayList<>(projects.size());
+        for (ProjectEntity p : projects) ids.add(p.getId());
+        return ids;
+    }
+
+    private static List<List<String>> chunks(List<String> keys) {
+        List<List<String>> out = new ArrayList<>();
+        for (int i = 0; i < keys.size(); i += IN_CHUNK) out.add(keys.subList(i, Math.min(keys.size(), i + IN_CHUNK)));
+        return out;
+    }
+}
@@ -0,0 +1,347 @@
+package com.mappingstudio.schema;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Streaming XSD → {@link CompactSchemaTree}. One StAX pass collects a small schema model (global elements,
+ * named complexTypes and groups, each as a list of particles); no DOM is built. The tree is then expanded
+ * from the global elements, resolving type="...", ref="..." and group refs (plus complexContent extension
+ * bases) through a memoized type table. Recursive types are cut with a "(recursive)" leaf.
+ */
+final class XsdTreeBuilder {
+
+    private static final String XS_NS = "http://www.w3.org/2001/XMLSchema";
+    /** How far into the upload to look for the XML declaration past leading junk. */
+    private static final int PROLOG_SCAN = 64 * 1024;
+    private static final byte[] XML_DECL = "<?xml".getBytes(StandardCharsets.US_ASCII);
+
+    private XsdTreeBuilder() {}
+
+    /** xs:element declaration (global or local). */
+    private static final class ElementDecl {
+        String name;
+        String typeName;
+        String ref;
+        /** Inline anonymous complexType, if any. */
+        TypeDecl inlineType;
+    }
+
+    /** Named or anonymous complexType, or a named group: its content particles in document order. */
+    private static final class TypeDecl {
+        final List<Object> particles = new ArrayList<>(); // ElementDecl or GroupRef
+        String baseName;
+        boolean simpleContent;
+    }
+
+    private record GroupRef(String name) {}
+
+    /** What the current XSD element contributes to; pass-through containers reuse their parent's target. */
+    private record Ctx(ElementDecl element, TypeDecl type, boolean skip) {}
+
+    private static final class Model {
+        final Map<String, ElementDecl> elements = new LinkedHashMap<>();
+        final Map<String, TypeDecl> types = new LinkedHashMap<>();
+        final Map<String, TypeDecl> groups = new HashMap<>();
+        boolean isSchema;
+    }
+
+    static CompactSchemaTree build(InputStream in, int maxDepth, int maxLeaves) throws IOException {
+        Model model;
+        try {
+            model = read(in);
+        } catch (XMLStreamException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+        CompactSchemaTree.Builder b = new CompactSchemaTree.Builder();
+        if (!model.isSchema) return fallback(b);
+        Expander x = new Expander(model, b, maxDepth, maxLeaves);
+        if (!model.elements.isEmpty()) {
+            for (ElementDecl e : model.elements.values()) {
+                if (x.leaves >= maxLeaves) break;
+                x.element(e, -1, "", 1);
+            }
+        } else {
+            // Type library without global elements: show each named complexType as a root
+            for (Map.Entry<String, TypeDecl> t : model.types.entrySet()) {
+                if (x.leaves >= maxLeaves) break;
+                ElementDecl synthetic = new ElementDecl();
+                synthetic.name = t.getKey();
+                synthetic.typeName = t.getKey();
+                x.element(synthetic, -1, "", 1);
+            }
+        }
+        if (b.size() == 0) return fallback(b);
+        return b.build();
+    }
+
+    private static CompactSchemaTree fallback(CompactSchemaTree.Builder b) {
+        b.add(-1, "root", "schema", true);
+        return b.build();
+    }
+
+    // --- Pass 1: streaming read into the model ---------------------------------------------------
+
+    private static Model read(InputStream in) throws IOException, XMLStreamException {
+        XMLInputFactory f = XMLInputFactory.newFactory();
+        f.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        f.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        f.setProperty(XMLInputFactory.IS_COALESCING, false);
+        XMLStreamReader r = open(f, in);
+        Model model = new Model();
+        Deque<Ctx> stack = new ArrayDeque<>();
+        try {
+            while (r.hasNext()) {
+                int event = r.next();
+                if (event == XMLStreamConstants.END_ELEMENT) {
+                    if (!stack.isEmpty()) stack.pop();
+                    continue;
+                }
+                if (event != XMLStreamConstants.START_ELEMENT) continue;
+                Ctx parent = stack.peek();
+                if (parent == null) {
+                    model.isSchema = isXs(r) && "schema".equals(r.getLocalName());
+                    stack.push(new Ctx(null, null, !model.isSchema));
+                    continue;
+                }
+                if (parent.skip() || !isXs(r)) {
+                    stack.push(new Ctx(null, null, true));
+                    continue;
+                }
+                boolean topLevel = stack.size() == 1;
+                stack.push(open(r, r.getLocalName(), parent, topLevel, model));
+            }
+        } finally {
+            r.close();
+        }
+        return model;
+    }
+
+    private static Ctx open(XMLStreamReader r, String tag, Ctx parent, boolean topLevel, Model model) {
+        switch (tag) {
+            case "element" -> {
+                ElementDecl e = new ElementDecl();
+                e.name = attr(r, "name");
+                e.typeName = localName(attr(r, "type"));
+                e.ref = localName(attr(r, "ref"));
+                if (topLevel) {
+                    if (e.name != null) model.elements.putIfAbsent(e.name, e);
+                } else if (parent.type() != null) {
+                    parent.type().particles.add(e);
+                }
+                return new Ctx(e, null, false);
+            }
+            case "complexType" -> {
+                TypeDecl t = new TypeDecl();
+                String name = attr(r, "name");
+                if (topLevel) {
+                    if (name != null) model.types.putIfAbsent(name, t);
+                } else if (parent.element() != null) {
+                    parent.element().inlineType = t;
+                }
+                return new Ctx(null, t, false);
+            }
+            case "group" -> {
+                String name = attr(r, "name");
+                if (topLevel && name != null) {
+                    TypeDecl g = new TypeDecl();
+                    model.groups.putIfAbsent(name, g);
+                    return new Ctx(null, g, false);
+                }
+                String ref = localName(attr(r, "ref"));
+                if (ref != null && parent.type() != null) parent.type().particles.add(new GroupRef(ref));
+                return new Ctx(null, null, true);
+            }
+            case "sequence", "choice", "all", "complexContent" -> {
+                return new Ctx(null, parent.type(), parent.type() == null);
+            }
+            case "simpleContent" -> {
+                if (parent.type() != null) parent.type().simpleContent = true;
+                return new Ctx(null, null, true);
+            }
+            case "extension" -> {
+                if (parent.type() != null) parent.type().baseName = localName(attr(r, "base"));
+                return new Ctx(null, parent.type(), parent.type() == null);
+            }
+            case "restriction" -> {
+                // complexContent restriction restates the content model; the base adds nothing
+                return new Ctx(null, parent.type(), parent.type() == null);
+            }
+            default -> {
+                // annotation, attribute, simpleType, key, import, ... do not contribute child elements
+                return new Ctx(null, null, true);
+            }
+        }
+    }
+
+    private static boolean isXs(XMLStreamReader r) {
+        String ns = r.getNamespaceURI();
+        return ns == null || ns.isEmpty() || XS_NS.equals(ns);
+    }
+
+    private static String attr(XMLStreamReader r, String name) {
+        String v = r.getAttributeValue(null, name);
+        return v == null || v.isBlank() ? null : v.trim();
+    }
+
+    private static String localName(String qname) {
+        if (qname == null) return null;
+        int colon = qname.indexOf(':');
+        return colon >= 0 ? qname.substring(colon + 1) : qname;
+    }
+
+    /**
+     * Reader over the upload with the prolog normalized as before the streaming rewrite: a UTF-8 BOM is
+     * dropped, UTF-16 (with or without BOM) is decoded, and whitespace or stray bytes before the XML
+     * declaration (or, without one, before the first '<') are skipped. Only the first PROLOG_SCAN bytes are
+     * looked at, so the upload is still read once, as a stream.
+     */
+    private static XMLStreamReader open(XMLInputFactory f, InputStream raw) throws IOException, XMLStreamException {
+        BufferedInputStream in = new BufferedInputStream(raw, 8192);
+        in.mark(4);
+        byte[] head = in.readNBytes(4);
+        in.reset();
+        Charset utf16 = null;
+        int skip = 0;
+        if (head.length >= 3 && (head[0] & 0xFF) == 0xEF && (head[1] & 0xFF) == 0xBB && (head[2] & 0xFF) == 0xBF) {
+            skip = 3;
+        } else if (head.length >= 2 && (head[0] & 0xFF) == 0xFF && (head[1] & 0xFF) == 0xFE) {
+            utf16 = StandardCharsets.UTF_16LE;
+            skip = 2;
+        } else if (head.length >= 2 && (head[0] & 0xFF) == 0xFE && (head[1] & 0xFF) == 0xFF) {
+            utf16 = StandardCharsets.UTF_16BE;
+            skip = 2;
+        } else if (head.length == 4 && head[0] == '<' && head[1] == 0 && head[2] == '?' && head[3] == 0) {
+            utf16 = StandardCharsets.UTF_16LE; // no BOM: 3C 00 3F 00 = "<?"
+        } else if (head.length == 4 && head[0] == 0 && head[1] == '<' && head[2] == 0 && head[3] == '?') {
+            utf16 = StandardCharsets.UTF_16BE;
+        }
+        in.skipNBytes(skip);
+        // Decoded text: the reader ignores the declaration's encoding, which would otherwise contradict it
+        if (utf16 != null) return f.createXMLStreamReader(new InputStreamReader(in, utf16));
+        in.skipNBytes(prologOffset(in));
+        return f.createXMLStreamReader(in);
+    }
+
+    /** Bytes to skip before the XML starts: leading whitespace, then junk up to "&lt;?xml" or the first '&lt;'. */
+    private static int prologOffset(BufferedInputStream in) throws IOException {
+        in.mark(PROLOG_SCAN);
+        byte[] w = in.readNBytes(PROLOG_SCAN);
+        in.reset();
+        int start = 0;
+        while (start < w.length && (w[start] == ' ' || w[start] == '\t' || w[start] == '\r' || w[start] == '\n')) start++;
+        if (start < w.length && !startsWith(w, start, XML_DECL)) {
+            for (int i = start; i + XML_DECL.length <= w.length; i++) {
+                if (startsWith(w, i, XML_DECL)) return i;
+            }
+            for (int i = start; i < w.length; i++) {
+                if (w[i] == '<') return i;
+            }
+        }
+        return start;
+    }
+
+    private static boolean startsWith(byte[] w, int at, byte[] prefix) {
+        if (at + prefix.length > w.length) return false;
+        for (int j = 0; j < prefix.length; j++) if (w[at + j] != prefix[j]) return false;
+        return true;
+    }
+
+    // --- Pass 2: expansion with memoized type resolution ------------------------------------------
+
+    private static final class Expander {
+        private final Model model;
+        private final CompactSchemaTree.Builder b;
+        private final int maxDepth;
+        private final int maxLeaves;
+        /** Effective particles per named type / group (base chain and group refs flattened). */
+        private final Map<String, List<ElementDecl>> resolvedTypes = new HashMap<>();
+        private final Map<String, List<ElementDecl>> resolvedGroups = new HashMap<>();
+        private final Set<String> resolving = new HashSet<>();
+        /** Named types and referenced global elements on the current path, to stop recursive structures. */
+        private final Set<String> active = new HashSet<>();
+        int leaves;
+
+        Expander(Model model, CompactSchemaTree.Builder b, int maxDepth, int maxLeaves) {
+            this.model = model;
+            this.b = b;
+            this.maxDepth = maxDepth;
+            this.maxLeaves = maxLeaves;
+        }
+
+        void element(ElementDecl decl, int parentId, String parentPath, int depth) {
+            if (leaves >= maxLeaves || depth > maxDepth) return;
+            ElementDecl target = decl;
+            if (decl.ref != null) {
+                ElementDecl global = model.elements.get(decl.ref);
+                target = global != null ? global : decl;
+            }
+            String name = decl.name != null ? decl.name : target.name != null ? target.name : decl.ref;
+            if (name == null) return;
+            String path = parentPath.isEmpty() ? name : parentPath + "." + name;
+            String key = SchemaTreeBuilders.safeKey(path);
+
+            String typeName = target.inlineType == null ? target.typeName : null;
+            List<ElementDecl> children = target.inlineType != null
+                ? flatten(target.inlineType)
+                : typeName != null ? resolveType(typeName) : List.of();
+            String marker = typeName != null ? "type:" + typeName : decl.ref != null ? "element:" + decl.ref : null;
+            boolean recursive = marker != null && active.contains(marker);
+            if (children.isEmpty() || recursive || depth == maxDepth) {
+                leaves++;
+                String dataType = typeName != null && !model.types.containsKey(typeName) ? typeName : null;
+                b.add(parentId, key, recursive ? name + " (recursive)" : name, true, dataType);
+                return;
+            }
+            int id = b.add(parentId, key, name, false);
+            boolean pushed = marker != null && active.add(marker);
+            for (ElementDecl child : children) {
+                if (leaves >= maxLeaves) break;
+                element(child, id, path, depth + 1);
+            }
+            if (pushed) active.remove(marker);
+        }
+
+        private List<ElementDecl> resolveType(String name) {
+            List<ElementDecl> cached = resolvedTypes.get(name);
+            if (cached != null) return cached;
+            TypeDecl t = model.types.get(name);
+            if (t == null || !resolving.add("type:" + name)) return List.of(); // builtin/simple type, or base cycle
+            List<ElementDecl> out = flatten(t);
+            resolving.remove("type:" + name);
+            resolvedTypes.put(name, out);
+            return out;
+        }
+
+        private List<ElementDecl> resolveGroup(String name) {
+            List<ElementDecl> cached = resolvedGroups.get(name);
+            if (cached != null) return cached;
+            TypeDecl g = model.groups.get(name);
+            if (g == null || !resolving.add("group:" + name)) return List.of();
+            List<ElementDecl> out = flatten(g);
+            resolving.remove("group:" + name);
+            resolvedGroups.put(name, out);
+            return out;
+        }
+
+        /** Base type particles (extension), then own particles with group refs expanded in place. */
+        private List<ElementDecl> flatten(TypeDecl t) {
+            List<ElementDecl> out = new ArrayList<>();
+            if (t.baseName != null) out.addAll(resolveType(t.baseName));
+            for (Object p : t.particles) {
+                if (p instanceof ElementDecl e) out.add(e);
+                else if (p instanceof GroupRef g) out.addAll(resolveGroup(g.name()));
+            }
+            return out.isEmpty() ? List.of() : List.copyOf(out);
+        }
+    }
+}
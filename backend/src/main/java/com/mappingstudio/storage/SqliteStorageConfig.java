@@ -0,0 +1,93 @@
+package com.mappingstudio.storage;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import jakarta.persistence.EntityManagerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.sqlite.SQLiteConfig;
+import org.sqlite.SQLiteDataSource;
+
+import javax.sql.DataSource;
+
+/**
+ * app.sqlite.storage-mode=wal: the database runs in WAL mode with two connection pools behind one DataSource.
+ * Read-only transactions get a connection from a pool of read-only connections (WAL readers never block the
+ * writer or each other); everything else uses a small read-write pool. Write transactions are admitted one at
+ * a time by {@link WriteGateTransactionManager}, so concurrent writers wait in line in the JVM instead of
+ * failing with SQLITE_BUSY. The read-write pool has a spare connection because Hibernate allocates mapping
+ * id blocks on a separate connection while the writing transaction holds its own.
+ * A read reaches the read pool only inside a read-only transaction: the repositories are annotated
+ * {@code @Transactional(readOnly = true)} (their modifying methods override it) and open-in-view is off, so a
+ * repository call outside a service transaction runs in its own short read-only transaction and no request
+ * keeps a write connection just because it read something.
+ * In the default (legacy) mode none of this is configured and Spring Boot's single pool is used.
+ */
+@Configuration
+@ConditionalOnProperty(name = "app.sqlite.storage-mode", havingValue = "wal")
+public class SqliteStorageConfig {
+
+    /** The writing transaction, Hibernate's id-block connection, and one for schema tooling at startup. */
+    private static final int WRITE_POOL_SIZE = 3;
+
+    @Value("${spring.datasource.url}")
+    private String url;
+
+    @Value("${app.sqlite.busy-timeout-ms:5000}")
+    private int busyTimeoutMs;
+
+    @Bean(name = "sqliteWriteDataSource")
+    public HikariDataSource sqliteWriteDataSource() {
+        SQLiteConfig config = new SQLiteConfig();
+        config.setJournalMode(SQLiteConfig.JournalMode.WAL);
+        // In WAL mode NORMAL only syncs at checkpoints; a commit is still atomic and survives an app crash
+        config.setSynchronous(SQLiteConfig.SynchronousMode.NORMAL);
+        config.setBusyTimeout(busyTimeoutMs);
+        return pool("sqlite-write", config, WRITE_POOL_SIZE, false);
+    }
+
+    @Bean(name = "sqliteReadDataSource")
+    public HikariDataSource sqliteReadDataSource(@Value("${app.sqlite.read-pool-size:8}") int readPoolSize) {
+        SQLiteConfig config = new SQLiteConfig();
+        config.setReadOnly(true);
+        config.setBusyTimeout(busyTimeoutMs);
+        return pool("sqlite-read", config, Math.max(1, readPoolSize), true);
+    }
+
+    /**
+     * The DataSource used by JPA and JdbcTemplate. Connections are fetched lazily, on the first statement, so
+     * the transaction's read-only flag is known by then and picks the pool.
+     */
+    @Bean
+    @Primary
+    public DataSource dataSource(@Qualifier("sqliteWriteDataSource") DataSource writes,
+                                 @Qualifier("sqliteReadDataSource") DataSource reads) {
+        LazyConnectionDataSourceProxy proxy = new LazyConnectionDataSourceProxy(writes);
+        proxy.setReadOnlyDataSource(reads);
+        return proxy;
+    }
+
+    @Bean
+    public PlatformTransactionManager transactionManager(EntityManagerFactory emf,
+                                                         @Value("${app.sqlite.write-wait-seconds:30}") long writeWaitSeconds) {
+        return new WriteGateTransactionManager(emf, writeWaitSeconds);
+    }
+
+    private HikariDataSource pool(String name, SQLiteConfig config, int size, boolean readOnly) {
+        SQLiteDataSource sqlite = new SQLiteDataSource(config);
+        sqlite.setUrl(url);
+        HikariConfig hikari = new HikariConfig();
+        hikari.setPoolName(name);
+        hikari.setDataSource(sqlite);
+        hikari.setMaximumPoolSize(size);
+        hikari.setMinimumIdle(1);
+        hikari.setReadOnly(readOnly);
+        return new HikariDataSource(hikari);
+    }
+}
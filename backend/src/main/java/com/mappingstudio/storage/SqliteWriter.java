@@ -0,0 +1,129 @@
+package com.mappingstudio.storage;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.function.Supplier;
+
+/**
+ * Runs small independent writes (AI learning feedback, training imports) with group commit. In WAL storage
+ * mode the work is queued to one writer thread, which takes everything waiting (up to
+ * app.sqlite.group-commit-max units) and runs it in a single transaction, so a burst of concurrent writes
+ * costs one commit instead of one each. If any unit of a group fails, the group is rolled back and its units
+ * are re-run one transaction each, so only the failing unit reports an error; units must therefore read what
+ * they change inside the work itself. Callers wait until their unit is committed.
+ * In legacy mode, and when the caller is already inside a transaction, the work runs inline in the caller's
+ * (or a new) transaction.
+ */
+@Service
+public class SqliteWriter {
+
+    private static final Logger log = LoggerFactory.getLogger(SqliteWriter.class);
+
+    private record Unit<T>(Supplier<T> work, CompletableFuture<T> result) {}
+
+    private final TransactionTemplate tx;
+    private final int maxGroup;
+    /** Unbounded: every queued unit has a caller blocked on it, so the queue is bounded by request threads. */
+    private final BlockingQueue<Unit<?>> queue = new LinkedBlockingQueue<>();
+    private final Thread writer;
+
+    public SqliteWriter(PlatformTransactionManager txManager,
+                        @Value("${app.sqlite.storage-mode:legacy}") String storageMode,
+                        @Value("${app.sqlite.group-commit-max:64}") int maxGroup) {
+        this.tx = new TransactionTemplate(txManager);
+        this.maxGroup = Math.max(1, maxGroup);
+        if ("wal".equalsIgnoreCase(storageMode)) {
+            this.writer = new Thread(this::drain, "sqlite-writer");
+            writer.setDaemon(true);
+            writer.start();
+        } else {
+            this.writer = null;
+        }
+    }
+
+    public void run(Runnable work) {
+        call(() -> {
+            work.run();
+            return null;
+        });
+    }
+
+    /** Run work in a write transaction and return its result once committed. */
+    public <T> T call(Supplier<T> work) {
+        if (writer == null || Thread.currentThread() == writer
+            || TransactionSynchronizationManager.isActualTransactionActive()) {
+            return tx.execute(status -> work.get());
+        }
+        Unit<T> unit = new Unit<>(work, new CompletableFuture<>());
+        queue.add(unit);
+        try {
+            return unit.result().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the database writer", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException re) throw re;
+            if (e.getCause() instanceof Error err) throw err;
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private void drain() {
+        List<Unit<?>> group = new ArrayList<>(maxGroup);
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                group.add(queue.take());
+            } catch (InterruptedException e) {
+                break;
+            }
+            queue.drainTo(group, maxGroup - 1);
+            if (group.size() == 1) runAlone(group.get(0));
+            else runGroup(group);
+            group.clear();
+        }
+        for (Unit<?> u : queue) u.result().completeExceptionally(new IllegalStateException("Database writer stopped"));
+    }
+
+    private void runGroup(List<Unit<?>> group) {
+        List<Object> results = new ArrayList<>(group.size());
+        try {
+            tx.executeWithoutResult(status -> {
+                for (Unit<?> u : group) results.add(u.work().get());
+            });
+        } catch (RuntimeException | Error e) {
+            log.debug("Group of {} writes failed, retrying one by one", group.size(), e);
+            for (Unit<?> u : group) runAlone(u);
+            return;
+        }
+        log.debug("Committed {} writes in one transaction", group.size());
+        for (int i = 0; i < group.size(); i++) complete(group.get(i), results.get(i));
+    }
+
+    private <T> void runAlone(Unit<T> u) {
+        try {
+            u.result().complete(tx.execute(status -> u.work().get()));
+        } catch (Throwable e) {
+            u.result().completeExceptionally(e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> void complete(Unit<T> u, Object result) {
+        u.result().complete((T) result);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (writer != null) writer.interrupt();
+    }
+}
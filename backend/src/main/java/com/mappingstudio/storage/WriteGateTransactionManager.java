@@ -0,0 +1,75 @@
+package com.mappingstudio.storage;
+
+import jakarta.persistence.EntityManagerFactory;
+import org.springframework.orm.jpa.JpaTransactionManager;
+import org.springframework.transaction.CannotCreateTransactionException;
+import org.springframework.transaction.TransactionDefinition;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * JPA transaction manager that lets one read-write transaction run at a time (SQLite has a single writer
+ * anyway). Writers queue on a fair lock in arrival order; read-only transactions are not gated. A writer that
+ * waits longer than app.sqlite.write-wait-seconds fails with CannotCreateTransactionException.
+ */
+public class WriteGateTransactionManager extends JpaTransactionManager {
+
+    private static final long serialVersionUID = 1L;
+
+    private final ReentrantLock writeLock = new ReentrantLock(true);
+    private final long waitSeconds;
+    /** Per thread, whether each open transaction (innermost last) holds the lock; suspended ones stay below. */
+    private final ThreadLocal<Deque<Boolean>> holds = ThreadLocal.withInitial(ArrayDeque::new);
+
+    public WriteGateTransactionManager(EntityManagerFactory emf, long waitSeconds) {
+        super(emf);
+        this.waitSeconds = Math.max(1, waitSeconds);
+    }
+
+    @Override
+    protected void doBegin(Object transaction, TransactionDefinition definition) {
+        boolean gated = !definition.isReadOnly();
+        if (gated) acquire();
+        holds.get().push(gated);
+        try {
+            super.doBegin(transaction, definition);
+        } catch (RuntimeException | Error e) {
+            release();
+            throw e;
+        }
+    }
+
+    @Override
+    protected void doCleanupAfterCompletion(Object transaction) {
+        try {
+            super.doCleanupAfterCompletion(transaction);
+        } finally {
+            release();
+        }
+    }
+
+    /** Write transactions currently waiting for their turn. */
+    public int getQueuedWriters() {
+        return writeLock.getQueueLength();
+    }
+
+    private void acquire() {
+        try {
+            if (!writeLock.tryLock(waitSeconds, TimeUnit.SECONDS))
+                throw new CannotCreateTransactionException("Timed out after " + waitSeconds + "s waiting for the database writer");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CannotCreateTransactionException("Interrupted while waiting for the database writer", e);
+        }
+    }
+
+    private void release() {
+        Deque<Boolean> stack = holds.get();
+        Boolean gated = stack.poll();
+        if (stack.isEmpty()) holds.remove();
+        if (Boolean.TRUE.equals(gated)) writeLock.unlock();
+    }
+}